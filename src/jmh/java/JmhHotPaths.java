@@ -0,0 +1,156 @@
+import benchmarks.ClientHotPaths;
+import ch.qos.logback.classic.Level;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Flow;
+
+/**
+ * Framework side of {@link ClientHotPaths}, kept in the default package next to the code it calls. It builds
+ * the objects it measures itself instead of extending {@link BaseClass}, so a fork starts no health checker
+ * or metrics endpoint and reserves no run number; requests are built the way BaseClass builds them.
+ */
+public class JmhHotPaths implements ClientHotPaths {
+    private static final Logger logger = LoggerFactory.getLogger("benchmarks.Log");
+    private static final String USER_BODY = "{\"email\":\"t0000001@mail.com\",\"firstName\":\"John\",\"id\":42,"
+            + "\"lastName\":\"Connor\",\"middleName\":\"Sarah\",\"username\":\"t0000001\"}\n";
+    private static final byte[] USER_BYTES = USER_BODY.getBytes(StandardCharsets.UTF_8);
+    private final UserFixture user = new UserFixture(new RegistrationRequest(
+            "t0000001", "Password1@", "t0000001@mail.com", "John", "Connor", "Sarah"));
+    private final RegistrationResponse response = new RegistrationResponse(42, "t0000001", "t0000001@mail.com", "John", "Connor", "Sarah");
+    private final RegistrationResponse sameResponse = new RegistrationResponse(42, "t0000001", "t0000001@mail.com", "John", "Connor", "Sarah");
+    private final UserIdentityGenerator identities = UserIdentityGenerator.forRange('b', 0, 0, UserIdentityGenerator.USERS_PER_RUN);
+    private final HttpClientManager client;
+    private final Endpoints endpoints;
+    private StubServer stub;
+    private HttpClientManager stubClient;
+    private URI stubHealth;
+
+    public JmhHotPaths() {
+        ((ch.qos.logback.classic.Logger) logger).setLevel(Level.WARN);
+        var config = YamlReader.config();
+        endpoints = new Endpoints(config);
+        client = new HttpClientManager(config, endpoints);
+    }
+
+    @Override
+    public Object newRegistrationRequest() throws Exception {
+        return postJson(endpoints.next().register(), Serialization.toJson(identities.next("John", "Connor", "Sarah")));
+    }
+
+    @Override
+    public Object repeatedRegistrationRequest() throws Exception {
+        return postJson(endpoints.next().register(), Serialization.cachedJson(user.getRegistration()));
+    }
+
+    @Override
+    public Object loginRequest() throws Exception {
+        return postJson(endpoints.next().login(), Serialization.cachedJson(new LoginRequest(user.getUsername(), user.getPassword())));
+    }
+
+    @Override
+    public Object treeValidation() throws Exception {
+        var body = new String(USER_BYTES, StandardCharsets.UTF_8);
+        var jsonNode = Serialization.readTree(body);
+        var registration = user.getRegistration();
+        if (!jsonNode.get("username").asText().equals(registration.getUsername())
+                || !jsonNode.get("email").asText().equals(registration.getEmail())
+                || !jsonNode.get("firstName").asText().equals(registration.getFirstName())
+                || !jsonNode.get("middleName").asText().equals(registration.getMiddleName())
+                || !jsonNode.get("lastName").asText().equals(registration.getLastName())) {
+            throw new AssertionError("Unexpected user " + body);
+        }
+        return jsonNode.get("id").asInt();
+    }
+
+    @Override
+    public Object streamingValidation() {
+        var subscriber = StreamingValidator.user(user.getRegistration()).bodyHandler().apply(OK);
+        subscriber.onSubscribe(NO_BACKPRESSURE);
+        subscriber.onNext(List.of(ByteBuffer.wrap(USER_BYTES)));
+        subscriber.onComplete();
+        return subscriber.getBody().toCompletableFuture().join().expectValid("Benchmark", 200).value("id");
+    }
+
+    @Override
+    public Object readRegistrationResponse() throws Exception {
+        return Serialization.readRegistrationResponse(USER_BODY);
+    }
+
+    @Override
+    public int registrationResponseEqualsAndHashCode() {
+        return response.equals(sameResponse) ? response.hashCode() : 0;
+    }
+
+    @Override
+    public void disabledConcatenatedLog() {
+        logger.info("Response status body: " + USER_BODY + " for user " + user.getUsername());
+    }
+
+    @Override
+    public void disabledParameterizedLog() {
+        logger.info("Response status body: {} for user {}", USER_BODY, user.getUsername());
+    }
+
+    @Override
+    public void startStub() throws Exception {
+        var settings = YamlReader.config().with(Map.of("stub.threads", 1));
+        stub = new StubServer(settings.stub).start();
+        var config = settings.with(Map.of("host.url", settings.stub.bindAddress, "host.port", stub.port(),
+                "sla.enforcePerRequest", false));
+        stubClient = new HttpClientManager(config);
+        stubHealth = stubClient.endpoints().next().health();
+        healthRoundTrip();
+    }
+
+    @Override
+    public Object healthRoundTrip() throws Exception {
+        var response = stubClient.send(stubClient.newRequest(stubHealth).build());
+        if (response.statusCode() != 200) {
+            throw new UnexpectedResponseError("Health", 200, response.statusCode(), response.body());
+        }
+        return response;
+    }
+
+    @Override
+    public void stopStub() {
+        stubClient.shutdown();
+        stub.stop();
+    }
+
+    /** What BaseClass does for registration and login requests */
+    private HttpRequest postJson(URI uri, byte[] json) {
+        return client.newRequest(uri)
+                .header("Content-type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(json))
+                .build();
+    }
+
+    private static final HttpResponse.ResponseInfo OK = new HttpResponse.ResponseInfo() {
+        @Override
+        public int statusCode() { return 200; }
+
+        @Override
+        public HttpHeaders headers() { return HttpHeaders.of(Map.of(), (name, value) -> true); }
+
+        @Override
+        public HttpClient.Version version() { return HttpClient.Version.HTTP_1_1; }
+    };
+
+    private static final Flow.Subscription NO_BACKPRESSURE = new Flow.Subscription() {
+        @Override
+        public void request(long n) {}
+
+        @Override
+        public void cancel() {}
+    };
+}
@@ -0,0 +1,122 @@
+package benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the benchmarks with the GC profiler and compares them with the committed baseline. Allocation per
+ * operation does not depend on the machine, so growing past {@code jmh.allocTolerance} fails the run.
+ * Throughput does, so a drop past {@code jmh.throughputTolerance} only warns unless
+ * {@code jmh.enforceThroughput} is set. {@code -Djmh.updateBaseline=true} records the current numbers.
+ */
+public class BenchmarkRunner {
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        var quick = Boolean.getBoolean("jmh.quick");
+        var options = new OptionsBuilder()
+                .include(System.getProperty("jmh.include", "benchmarks\\..*Benchmark"))
+                .forks(1)
+                .warmupIterations(quick ? 1 : 3)
+                .warmupTime(TimeValue.seconds(quick ? 1 : 2))
+                .measurementIterations(quick ? 2 : 5)
+                .measurementTime(TimeValue.seconds(quick ? 1 : 2))
+                .timeUnit(TimeUnit.SECONDS)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("target/jmh-result.json")
+                .build();
+        var results = new Runner(options).run();
+
+        var baselineFile = Path.of(System.getProperty("jmh.baseline", "src/jmh/resources/jmh-baseline.json"));
+        if (Boolean.getBoolean("jmh.updateBaseline")) {
+            writeBaseline(baselineFile, results);
+            System.out.println("Baseline written to " + baselineFile.toAbsolutePath());
+            return;
+        }
+        var regressions = compare(baselineFile, results);
+        if (!regressions.isEmpty()) {
+            regressions.forEach(regression -> System.err.println("REGRESSION " + regression));
+            System.exit(1);
+        }
+    }
+
+    private static List<String> compare(Path baselineFile, Collection<RunResult> results) throws IOException {
+        var regressions = new ArrayList<String>();
+        if (!Files.exists(baselineFile)) {
+            System.out.println("No baseline at " + baselineFile + ", run with -Djmh.updateBaseline=true to record one");
+            return regressions;
+        }
+        var baseline = mapper.readTree(baselineFile.toFile());
+        var allocTolerance = Double.parseDouble(System.getProperty("jmh.allocTolerance", "0.10"));
+        var throughputTolerance = Double.parseDouble(System.getProperty("jmh.throughputTolerance", "0.50"));
+        var enforceThroughput = Boolean.getBoolean("jmh.enforceThroughput");
+
+        System.out.printf("%n%-70s %14s %14s %12s %12s%n", "Benchmark", "ops/s", "baseline", "B/op", "baseline");
+        for (var result : results) {
+            var name = result.getParams().getBenchmark();
+            var opsPerSecond = result.getPrimaryResult().getScore();
+            var allocPerOp = allocationPerOp(result);
+            var expected = baseline.path(name);
+            System.out.printf("%-70s %14.0f %14.0f %12.0f %12.0f%n", name, opsPerSecond,
+                    expected.path("opsPerSecond").asDouble(Double.NaN), allocPerOp, expected.path("allocBytesPerOp").asDouble(Double.NaN));
+            if (expected.isMissingNode()) {
+                continue;
+            }
+            // a few bytes of slack so that benchmarks allocating next to nothing do not flap
+            var allocLimit = expected.path("allocBytesPerOp").asDouble() * (1 + allocTolerance) + 16;
+            if (allocPerOp > allocLimit) {
+                regressions.add(name + " allocates " + Math.round(allocPerOp) + " B/op, baseline "
+                        + expected.path("allocBytesPerOp").asLong() + " B/op");
+            }
+            var throughputLimit = expected.path("opsPerSecond").asDouble() * (1 - throughputTolerance);
+            if (opsPerSecond < throughputLimit) {
+                var message = name + " runs " + Math.round(opsPerSecond) + " ops/s, baseline "
+                        + expected.path("opsPerSecond").asLong() + " ops/s";
+                if (enforceThroughput) {
+                    regressions.add(message);
+                } else {
+                    System.out.println("WARNING " + message);
+                }
+            }
+        }
+        return regressions;
+    }
+
+    private static void writeBaseline(Path baselineFile, Collection<RunResult> results) throws IOException {
+        var baseline = mapper.createObjectNode();
+        for (var result : results) {
+            ObjectNode entry = baseline.putObject(result.getParams().getBenchmark());
+            entry.put("opsPerSecond", Math.round(result.getPrimaryResult().getScore()));
+            entry.put("allocBytesPerOp", Math.round(allocationPerOp(result)));
+        }
+        if (baselineFile.getParent() != null) {
+            Files.createDirectories(baselineFile.getParent());
+        }
+        mapper.writerWithDefaultPrettyPrinter().writeValue(baselineFile.toFile(), baseline);
+    }
+
+    private static double allocationPerOp(RunResult result) {
+        for (var entry : result.getSecondaryResults().entrySet()) {
+            if (entry.getKey().endsWith("gc.alloc.rate.norm")) {
+                return entry.getValue().getScore();
+            }
+        }
+        return Double.NaN;
+    }
+}
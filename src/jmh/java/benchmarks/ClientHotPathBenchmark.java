@@ -0,0 +1,62 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Per-request work the framework does on the client side, without any network I/O */
+@State(Scope.Thread)
+public class ClientHotPathBenchmark {
+    private ClientHotPaths paths;
+
+    @Setup
+    public void setUp() {
+        paths = ClientHotPaths.load();
+    }
+
+    @Benchmark
+    public Object newRegistrationRequest() throws Exception {
+        return paths.newRegistrationRequest();
+    }
+
+    @Benchmark
+    public Object repeatedRegistrationRequest() throws Exception {
+        return paths.repeatedRegistrationRequest();
+    }
+
+    @Benchmark
+    public Object loginRequest() throws Exception {
+        return paths.loginRequest();
+    }
+
+    @Benchmark
+    public Object treeValidation() throws Exception {
+        return paths.treeValidation();
+    }
+
+    @Benchmark
+    public Object streamingValidation() {
+        return paths.streamingValidation();
+    }
+
+    @Benchmark
+    public Object readRegistrationResponse() throws Exception {
+        return paths.readRegistrationResponse();
+    }
+
+    @Benchmark
+    public int registrationResponseEqualsAndHashCode() {
+        return paths.registrationResponseEqualsAndHashCode();
+    }
+
+    @Benchmark
+    public void disabledConcatenatedLog() {
+        paths.disabledConcatenatedLog();
+    }
+
+    @Benchmark
+    public void disabledParameterizedLog() {
+        paths.disabledParameterizedLog();
+    }
+}
@@ -0,0 +1,47 @@
+package benchmarks;
+
+/**
+ * The framework code paths under measurement. JMH only accepts benchmarks in a named package, which
+ * cannot refer to the framework classes in the default package, so the benchmarks call them through this
+ * interface; {@code JmhHotPaths} in the default package implements it.
+ */
+public interface ClientHotPaths {
+    static ClientHotPaths load() {
+        try {
+            return (ClientHotPaths) Class.forName("JmhHotPaths").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("JmhHotPaths is missing from the benchmark classpath", e);
+        }
+    }
+
+    /** Registration request for a new user each time, encoded without the payload cache */
+    Object newRegistrationRequest() throws Exception;
+
+    /** The same registration payload again, served from the payload cache */
+    Object repeatedRegistrationRequest() throws Exception;
+
+    Object loginRequest() throws Exception;
+
+    /** Body to String to JsonNode, then the fields the suites check */
+    Object treeValidation() throws Exception;
+
+    /** The same checks streamed through StreamingValidator */
+    Object streamingValidation();
+
+    Object readRegistrationResponse() throws Exception;
+
+    int registrationResponseEqualsAndHashCode();
+
+    /** Logging at a disabled level with the message concatenated up front, as the suites do */
+    void disabledConcatenatedLog();
+
+    void disabledParameterizedLog();
+
+    /** Starts the in-process stub for {@link #healthRoundTrip()} */
+    void startStub() throws Exception;
+
+    /** GET /health through the framework's HTTP client against the in-process stub */
+    Object healthRoundTrip() throws Exception;
+
+    void stopStub();
+}
@@ -0,0 +1,34 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Complete health requests through the framework's client against the in-process stub, on one thread:
+ * an upper bound for the requests per second one core of a load runner can generate.
+ */
+@State(Scope.Benchmark)
+@Threads(1)
+public class RoundTripBenchmark {
+    private ClientHotPaths paths;
+
+    @Setup
+    public void setUp() throws Exception {
+        paths = ClientHotPaths.load();
+        paths.startStub();
+    }
+
+    @TearDown
+    public void tearDown() {
+        paths.stopStub();
+    }
+
+    @Benchmark
+    public Object healthRoundTrip() throws Exception {
+        return paths.healthRoundTrip();
+    }
+}
@@ -0,0 +1,17 @@
+import java.util.Locale;
+
+/** How requests are spread over the configured targets, named as in the balancing section of the configuration */
+public enum BalancingStrategy {
+    ROUND_ROBIN,
+    LEAST_OUTSTANDING,
+    WEIGHTED;
+
+    public static BalancingStrategy from(String name) {
+        return switch (name.trim().toLowerCase(Locale.ROOT)) {
+            case "round-robin", "round_robin", "roundrobin" -> ROUND_ROBIN;
+            case "least-outstanding", "least_outstanding", "leastoutstanding" -> LEAST_OUTSTANDING;
+            case "weighted" -> WEIGHTED;
+            default -> throw new IllegalArgumentException("Unknown balancing strategy: " + name);
+        };
+    }
+}
@@ -1,12 +1,21 @@
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.apache.http.client.utils.URIBuilder;
+import com.fasterxml.jackson.databind.JsonNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.net.URISyntaxException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
 import java.net.http.HttpRequest;
-import java.nio.charset.StandardCharsets;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 
 public class BaseClass {
     protected static final String HEALTH_PATH = "health";
@@ -14,29 +23,431 @@ public class BaseClass {
     protected static final String USER_PATH = "user/";
     protected static final String LOGIN_PATH= "login";
     protected static final Integer STATUS_CODE_SUCCESSFUL = 200;
-    private static final Config config = YamlReader.readConfig("configuration.yaml");
+    protected static final String HEALTHY_RESPONSE = "{\"status\":\"healthy\"}\n";
+    private static final Config config;
     private static final Logger logger = LoggerFactory.getLogger(BaseClass.class);
-    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final HttpClientManager clientManager;
+    private static volatile UserIdentityGenerator identities;
+    private static final TokenCache tokenCache;
+    private static final UserFixtureManager fixtures;
+    private static final StubServer stub;
+    private static final Endpoints endpoints;
+    private static final TargetHealthChecker healthChecker;
+    private static final MetricsExporter metricsExporter;
+    private static final RunHistory history;
 
     static {
-        if (config == null) {
-            logger.error("Could not read configuration from config file.");
-            throw new IllegalStateException("Configuration is null");
+        var snapshot = YamlReader.config();
+        history = snapshot.history.enabled ? new RunHistory(snapshot.history) : null;
+        stub = snapshot.stub.enabled ? startStub(snapshot.stub) : null;
+        config = stub == null ? snapshot : snapshot.with(Map.of(
+                "host.url", snapshot.stub.bindAddress, "host.port", stub.port(), "targets", List.of()));
+        endpoints = new Endpoints(config);
+        clientManager = new HttpClientManager(config, endpoints);
+        healthChecker = new TargetHealthChecker(endpoints, clientManager, config.balancing).start();
+        try {
+            metricsExporter = new MetricsExporter(clientManager.metrics(), config.metrics).start();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not start the metrics endpoint on port " + config.metrics.port, e);
         }
+        tokenCache = new TokenCache(config.tokens);
+        fixtures = new UserFixtureManager(config.fixtures);
     }
 
-    public HttpRequest createRegistrationRequest(RegistrationRequest registrationRequest, String path) throws JsonProcessingException, URISyntaxException {
-        var jsonRequest = mapper.writeValueAsString(registrationRequest);
+    /** A user with a username no other thread, JVM or earlier run has used */
+    protected static UserFixture newUser(String firstName, String lastName, String middleName) {
+        return new UserFixture(identities().next(firstName, lastName, middleName));
+    }
+
+    protected static String newUsername() {
+        return identities().nextUsername();
+    }
+
+    /** Claims a run number on first use, unless a distributed worker was handed its range before that */
+    private static UserIdentityGenerator identities() {
+        var generator = identities;
+        if (generator != null) {
+            return generator;
+        }
+        synchronized (BaseClass.class) {
+            if (identities == null) {
+                try {
+                    identities = UserIdentityGenerator.forRun(config.identity, UserIdentityGenerator.RunClaim.over(clientManager));
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not claim a run number", e);
+                }
+            }
+            return identities;
+        }
+    }
 
-        return HttpRequest.newBuilder()
-                .uri(new URIBuilder()
-                        .setScheme("http")
-                        .setHost(config.host.url)
-                        .setPort(config.host.port)
-                        .setPath(path)
-                        .build())
+    protected static synchronized void useIdentities(UserIdentityGenerator generator) {
+        identities = generator;
+    }
+
+    public HttpRequest createRegistrationRequest(RegistrationRequest registrationRequest, String path) throws JsonProcessingException {
+        return registrationRequest(Serialization.toJson(registrationRequest), path);
+    }
+
+    /** For a payload sent again and again, e.g. a data provider row: its body comes from the payload cache */
+    public HttpRequest createRepeatedRegistrationRequest(RegistrationRequest registrationRequest, String path) throws JsonProcessingException {
+        return registrationRequest(Serialization.cachedJson(registrationRequest), path);
+    }
+
+    private HttpRequest registrationRequest(byte[] jsonRequest, String path) {
+        return newRequest(endpoints.next().resolve(path))
                 .header("Content-type", "application/json")
-                .POST(HttpRequest.BodyPublishers.ofString(jsonRequest, StandardCharsets.UTF_8))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(jsonRequest))
                 .build();
     }
+
+    public HttpRequest createHealthRequest() {
+        return newRequest(endpoints.next().health())
+                .build();
+    }
+
+    public HttpRequest createLoginRequest(LoginRequest loginRequest) throws JsonProcessingException {
+        return loginRequest(Serialization.toJson(loginRequest));
+    }
+
+    /** For the login of a pool user or a data provider row: its body comes from the payload cache */
+    public HttpRequest createRepeatedLoginRequest(LoginRequest loginRequest) throws JsonProcessingException {
+        return loginRequest(Serialization.cachedJson(loginRequest));
+    }
+
+    private HttpRequest loginRequest(byte[] jsonRequest) {
+        return newRequest(endpoints.next().login())
+                .header("Content-type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(jsonRequest))
+                .build();
+    }
+
+    public HttpRequest createGetUserRequest(Integer userId, String accessToken) {
+        return newRequest(endpoints.next().user(userId))
+                .header("Authorization", accessToken)
+                .build();
+    }
+
+    /** URI of an API path on the next target, the in-process stub when it is enabled */
+    protected static URI uri(String path) {
+        return endpoints.next().resolve(path);
+    }
+
+    public static Endpoints endpoints() {
+        return endpoints;
+    }
+
+    /** Request builder with the configured timeout and connection handling */
+    protected HttpRequest.Builder newRequest(URI uri) {
+        return clientManager.newRequest(uri);
+    }
+
+    /** Sends the request over the suite-wide HTTP client */
+    protected HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        return clientManager.send(request);
+    }
+
+    /** Non-blocking variant of {@link #send(HttpRequest)}, sharing the same concurrency limit */
+    protected CompletableFuture<HttpResponse<String>> sendAsync(HttpRequest request) {
+        return clientManager.sendAsync(request);
+    }
+
+    /** Same as {@link #sendAsync(HttpRequest)} with a custom body handler */
+    protected <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) {
+        return clientManager.sendAsync(request, bodyHandler);
+    }
+
+    /** How the async flows check response bodies; the functional suites keep the JsonNode tree */
+    protected ValidationMode validationMode() {
+        return ValidationMode.TREE;
+    }
+
+    /** Registers the user and stores the returned id in the fixture */
+    public CompletableFuture<UserFixture> registerAsync(UserFixture user) {
+        var stage = "Registration of " + user.getUsername();
+        if (validationMode() == ValidationMode.STREAMING) {
+            return supply(() -> createRegistrationRequest(user.getRegistration(), REGISTER_PATH))
+                    .thenCompose(request -> sendAsync(request, StreamingValidator.user(user.getRegistration()).bodyHandler()))
+                    .thenApply(response -> {
+                        var result = response.body().expectValid(stage, STATUS_CODE_SUCCESSFUL);
+                        user.setUserId(Integer.valueOf(result.value("id")));
+                        fixtures.track(user);
+                        return user;
+                    });
+        }
+        return supply(() -> createRegistrationRequest(user.getRegistration(), REGISTER_PATH))
+                .thenCompose(this::sendAsync)
+                .thenApply(response -> {
+                    var jsonNode = expectSuccess(response, stage);
+                    expectUserFields(jsonNode, user);
+                    user.setUserId(jsonNode.get("id").asInt());
+                    fixtures.track(user);
+                    return user;
+                });
+    }
+
+    /** Logs the user in and stores the access token in the fixture */
+    public CompletableFuture<UserFixture> loginAsync(UserFixture user) {
+        var stage = "Login of " + user.getUsername();
+        if (validationMode() == ValidationMode.STREAMING) {
+            return supply(() -> createRepeatedLoginRequest(new LoginRequest(user.getUsername(), user.getPassword())))
+                    .thenCompose(request -> sendAsync(request, StreamingValidator.login().bodyHandler()))
+                    .thenApply(response -> {
+                        var result = response.body().expectValid(stage, STATUS_CODE_SUCCESSFUL);
+                        if (result.value("access-token") == null) {
+                            throw new AssertionError("Response body does not contains access token");
+                        }
+                        user.setAccessToken(result.value("access-token"));
+                        return user;
+                    });
+        }
+        return supply(() -> createRepeatedLoginRequest(new LoginRequest(user.getUsername(), user.getPassword())))
+                .thenCompose(this::sendAsync)
+                .thenApply(response -> {
+                    var jsonNode = expectSuccess(response, stage);
+                    expectEquals(jsonNode.path("message").asText(), "Login successful", "Login message");
+                    if (!jsonNode.hasNonNull("access-token")) {
+                        throw new AssertionError("Response body does not contains access token: " + response.body());
+                    }
+                    user.setAccessToken(jsonNode.get("access-token").asText());
+                    return user;
+                });
+    }
+
+    /** Reads the user back with its access token and checks it matches what was registered */
+    public CompletableFuture<UserFixture> getUserAsync(UserFixture user) {
+        var stage = "Get user " + user.getUserId();
+        if (validationMode() == ValidationMode.STREAMING) {
+            return supply(() -> createGetUserRequest(user.getUserId(), user.getAccessToken()))
+                    .thenCompose(request -> sendAsync(request, StreamingValidator.user(user.getRegistration()).bodyHandler()))
+                    .thenApply(response -> {
+                        response.body().expectValid(stage, STATUS_CODE_SUCCESSFUL);
+                        return user;
+                    });
+        }
+        return supply(() -> createGetUserRequest(user.getUserId(), user.getAccessToken()))
+                .thenCompose(this::sendAsync)
+                .thenApply(response -> {
+                    expectUserFields(expectSuccess(response, stage), user);
+                    return user;
+                });
+    }
+
+    /** Sets the user's access token from the shared token cache, logging in only when it has no usable one */
+    public CompletableFuture<UserFixture> accessTokenAsync(UserFixture user) {
+        return tokenCache.get(user.getUsername(), () -> loginAsync(user).thenApply(UserFixture::getAccessToken))
+                .thenApply(token -> {
+                    user.setAccessToken(token);
+                    return user;
+                });
+    }
+
+    /** Get user with a cached token; a rejected token is dropped so the next call logs in again */
+    public CompletableFuture<UserFixture> authenticatedGetUserAsync(UserFixture user) {
+        return accessTokenAsync(user)
+                .thenCompose(this::getUserAsync)
+                .whenComplete((ignored, error) -> {
+                    var cause = error instanceof CompletionException ? error.getCause() : error;
+                    if (cause instanceof UnexpectedResponseError rejected && rejected.statusCode() == 401) {
+                        tokenCache.invalidate(user.getUsername());
+                    }
+                });
+    }
+
+    /** Makes a token obtained by an explicit login available to {@link #accessTokenAsync} */
+    protected static void cacheAccessToken(UserFixture user) {
+        tokenCache.put(user.getUsername(), user.getAccessToken());
+    }
+
+    public static TokenCache tokenCache() {
+        return tokenCache;
+    }
+
+    /** Deletes the user through the configured delete endpoint, authenticated with its cached token */
+    public CompletableFuture<UserFixture> deleteUserAsync(UserFixture user) {
+        return accessTokenAsync(user)
+                .thenCompose(authenticated -> supply(() -> newRequest(uri(config.fixtures.deletePath + user.getUserId()))
+                        .header("Authorization", authenticated.getAccessToken())
+                        .DELETE()
+                        .build()))
+                .thenCompose(this::sendAsync)
+                .thenApply(response -> {
+                    if (response.statusCode() != 200 && response.statusCode() != 204) {
+                        throw new UnexpectedResponseError("Delete user " + user.getUserId(), 200, response.statusCode(), response.body());
+                    }
+                    tokenCache.invalidate(user.getUsername());
+                    return user;
+                });
+    }
+
+    /**
+     * Removes every user created so far, through the delete endpoint when {@code fixtures.deletePath} is
+     * set and otherwise only from the local registry.
+     */
+    public int cleanupUsers() throws InterruptedException {
+        var deletePath = config.fixtures.deletePath;
+        return fixtures.cleanup(deletePath == null || deletePath.isBlank() ? UserFixtureManager.FORGET : this::deleteUserAsync);
+    }
+
+    /** Registry of the users created in this run, for bulk provisioning */
+    public static UserFixtureManager fixtures() {
+        return fixtures;
+    }
+
+    /** Where the data-driven tests read their rows from */
+    protected static Config.TestData testData() {
+        return config.testData;
+    }
+
+    /** Register, login and get user chained as one non-blocking flow */
+    public CompletableFuture<UserFixture> userFlowAsync(UserFixture user) {
+        return registerAsync(user)
+                .thenCompose(this::loginAsync)
+                .thenCompose(this::getUserAsync);
+    }
+
+    /**
+     * Waits for an async flow and rethrows the original failure, so assertion errors raised inside a stage
+     * are reported by TestNG the same way as assertions in the test method.
+     */
+    protected static <T> T await(CompletableFuture<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            var cause = e.getCause();
+            if (cause instanceof UncheckedIOException unchecked) {
+                throw unchecked.getCause();
+            }
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    public static ConnectionStats connectionStats() {
+        return clientManager.stats();
+    }
+
+    public static LatencyRecorder latencyRecorder() {
+        return clientManager.latencyRecorder();
+    }
+
+    public static LatencyRecorder targetLatency() {
+        return clientManager.targetLatency();
+    }
+
+    /** One line per target: health, requests sent, requests still in flight and latency percentiles */
+    public static List<String> targetSummaries() {
+        var lines = new ArrayList<String>();
+        for (var target : endpoints.targets()) {
+            var histogram = clientManager.targetLatency().histogram(target.name());
+            lines.add(String.format("%s: %s, %d requests, %d outstanding, p50 %.2f ms, p99 %.2f ms",
+                    target, target.healthy() ? "healthy" : "unhealthy", histogram.getTotalCount(), target.outstanding(),
+                    histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(99) / 1000.0));
+        }
+        return lines;
+    }
+
+    /** Aggregate percentile budgets from the configuration that the run so far does not meet */
+    public static List<String> latencyBudgetViolations() {
+        return clientManager.sla().verify(clientManager.latencyRecorder());
+    }
+
+    /** Writes the latency histograms collected so far to the configured report file */
+    public static void writeLatencyReport() throws IOException {
+        var file = Path.of(config.reporting.latencyReportFile);
+        clientManager.latencyRecorder().writeReport(file, clientManager.targetLatency());
+        logger.info("Latency report written to " + file.toAbsolutePath());
+    }
+
+    /** Turns recording off for the requests of a {@link Warmup} and back on after it, see {@link HttpClientManager#measure} */
+    protected static void measure(boolean measuring) {
+        clientManager.measure(measuring);
+    }
+
+    /** Where the requests go, as the run history names it: the stub, or the configured targets */
+    protected static String target() {
+        return RunHistory.targetOf(config, endpoints);
+    }
+
+    /** Adds this run to the run history and checks it against the baseline, see {@link RunHistory#record} */
+    public static List<String> recordRun(String kind, long durationNanos) {
+        if (history == null) {
+            return List.of();
+        }
+        var run = RunHistory.of(kind, target(), clientManager.latencyRecorder(), durationNanos);
+        return history.record(run);
+    }
+
+    /** True once the live metrics saw the target failing for long enough that the run should stop */
+    public static boolean runAborted() {
+        return metricsExporter.aborted();
+    }
+
+    public static MetricsExporter metricsExporter() {
+        return metricsExporter;
+    }
+
+    public static void shutdownClient() {
+        healthChecker.stop();
+        metricsExporter.stop();
+        clientManager.shutdown();
+        if (stub != null) {
+            stub.stop();
+        }
+    }
+
+    /** Starts the stub; this class's copy of the configuration points its host at it */
+    private static StubServer startStub(Config.Stub settings) {
+        try {
+            return new StubServer(settings).start();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not start the stub API", e);
+        }
+    }
+
+    protected interface RequestFactory {
+        HttpRequest create() throws JsonProcessingException;
+    }
+
+    protected static CompletableFuture<HttpRequest> supply(RequestFactory factory) {
+        try {
+            return CompletableFuture.completedFuture(factory.create());
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static JsonNode expectSuccess(HttpResponse<String> response, String stage) {
+        if (response.statusCode() != STATUS_CODE_SUCCESSFUL) {
+            throw new UnexpectedResponseError(stage, STATUS_CODE_SUCCESSFUL, response.statusCode(), response.body());
+        }
+        try {
+            return Serialization.readTree(response.body());
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void expectUserFields(JsonNode jsonNode, UserFixture user) {
+        var registration = user.getRegistration();
+        expectEquals(jsonNode.path("username").asText(), registration.getUsername(), "Username");
+        expectEquals(jsonNode.path("email").asText(), registration.getEmail(), "Email");
+        expectEquals(jsonNode.path("firstName").asText(), registration.getFirstName(), "First name");
+        expectEquals(jsonNode.path("middleName").asText(), registration.getMiddleName(), "Middle name");
+        expectEquals(jsonNode.path("lastName").asText(), registration.getLastName(), "Last name");
+    }
+
+    private static void expectEquals(String actual, String expected, String field) {
+        if (!Objects.equals(actual, expected)) {
+            throw new AssertionError(field + " should be " + expected + " but it is " + actual);
+        }
+    }
 }
@@ -0,0 +1,293 @@
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Finds the highest throughput each scenario sustains within its latency budget. Requests run in a closed
+ * loop at a target concurrency: every completed request starts the next one while fewer than the target
+ * are in flight. After each step the measured p99 and error rate decide the next target, AIMD style: add
+ * {@code additiveIncrease} while the step met the budget, multiply by {@code multiplicativeDecrease} when
+ * it did not. A scenario ends after {@code backoffsToStop} breaches; its result is the best step that met
+ * the budget. Each step measures only the requests it started, and after a decrease it waits for the
+ * requests of the higher concurrency to drain before it starts, so no step is measured at another's load.
+ * Requests of a step still in flight when it ends count against it with their age so far: at saturation
+ * those are the slowest ones, and leaving them out would make the step look better than it was.
+ *
+ * Run with {@code mvn compile exec:java -Dexec.mainClass=CapacityFinder [-Dexec.args="register login"]}.
+ */
+public class CapacityFinder extends BaseClass {
+    private static final Logger logger = LoggerFactory.getLogger(CapacityFinder.class);
+    private static final Config config = YamlReader.config();
+    private final Config.Capacity settings;
+    private final LoadRunner runner;
+    private final int maxConcurrency;
+
+    public CapacityFinder(Config config) throws IOException {
+        this.settings = config.capacity;
+        this.runner = new LoadRunner(config.load);
+        this.maxConcurrency = Math.min(settings.maxConcurrency, config.client.maxConcurrentRequests);
+        if (maxConcurrency < settings.maxConcurrency) {
+            logger.warn("Concurrency is capped at client.maxConcurrentRequests = " + maxConcurrency
+                    + "; raise it to search further");
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        var scenarios = new ArrayList<LoadScenario>();
+        for (var name : args.length > 0 ? List.of(args) : config.capacity.scenarios) {
+            scenarios.add(LoadScenario.from(name));
+        }
+        try {
+            var finder = new CapacityFinder(config);
+            new Warmup(config.warmup, ValidationMode.from(config.load.validation)).run();
+            var results = new ArrayList<Result>();
+            for (var scenario : scenarios) {
+                results.add(finder.find(scenario));
+            }
+            for (var result : results) {
+                logger.info("Capacity " + result);
+            }
+            writeReport(Path.of(config.capacity.reportFile), results);
+            finder.runner.cleanupUsers();
+            finder.runner.close();
+        } finally {
+            shutdownClient();
+        }
+    }
+
+    /** Searches one scenario until it has backed off often enough or used up its steps */
+    public Result find(LoadScenario scenario) throws IOException, InterruptedException {
+        runner.prepare(LoadMix.of(scenario));
+        var result = new Result(scenario.name(), scenario.endpoint(), p99BudgetMs(scenario));
+        var loop = new ClosedLoop(scenario);
+        var concurrency = Math.max(1, Math.min(settings.initialConcurrency, maxConcurrency));
+        var backoffs = 0;
+        logger.info("Finding capacity of " + scenario + ", p99 budget " + result.p99BudgetMs + " ms, error budget "
+                + settings.maxErrorRate * 100 + "%");
+
+        for (int step = 1; step <= settings.maxSteps && backoffs < settings.backoffsToStop; step++) {
+            var measured = loop.step(concurrency, TimeUnit.SECONDS.toNanos(settings.stepSeconds));
+            result.steps.add(measured);
+            var withinBudget = measured.completed > 0 && measured.p99Ms <= result.p99BudgetMs
+                    && measured.errorRate <= settings.maxErrorRate;
+            logger.info(scenario + " step " + step + ": " + measured + (withinBudget ? "" : ", over budget"));
+
+            if (withinBudget) {
+                if (result.best == null || measured.throughput > result.best.throughput) {
+                    result.best = measured;
+                }
+                concurrency = Math.min(maxConcurrency, concurrency + settings.additiveIncrease);
+            } else {
+                backoffs++;
+                if (result.firstBreach == null) {
+                    result.firstBreach = measured;
+                }
+                concurrency = Math.max(1, (int) (concurrency * settings.multiplicativeDecrease));
+            }
+        }
+        loop.drain();
+        return result;
+    }
+
+    private int p99BudgetMs(LoadScenario scenario) {
+        var budget = config.sla.endpoints.get(scenario.endpoint());
+        return budget != null && budget.p99Ms != null ? budget.p99Ms : settings.p99Ms;
+    }
+
+    private static void writeReport(Path file, List<Result> results) throws IOException {
+        var report = new Report();
+        report.generatedAt = Instant.now().toString();
+        report.results = results;
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        Serialization.mapper().writerWithDefaultPrettyPrinter().writeValue(file.toFile(), report);
+        logger.info("Capacity report written to " + file.toAbsolutePath());
+    }
+
+    /** Keeps {@code target} requests of one scenario in flight, each completion starting the next request */
+    private class ClosedLoop {
+        private final LoadScenario scenario;
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicLong sequence = new AtomicLong();
+        private final Set<InFlight> inFlight = ConcurrentHashMap.newKeySet();
+        private final ThreadLocal<Boolean> filling = ThreadLocal.withInitial(() -> false);
+        private volatile int target;
+        private volatile Tally current;
+
+        ClosedLoop(LoadScenario scenario) {
+            this.scenario = scenario;
+        }
+
+        Step step(int concurrency, long durationNanos) throws InterruptedException {
+            target = concurrency;
+            while (active.get() > concurrency) {
+                Thread.sleep(10);
+            }
+            var tally = new Tally();
+            current = tally;
+            var start = System.nanoTime();
+            fill();
+            TimeUnit.NANOSECONDS.sleep(durationNanos);
+            current = null;
+            var end = System.nanoTime();
+            return tally.close(inFlight, concurrency, end - start, end);
+        }
+
+        void drain() throws InterruptedException {
+            target = 0;
+            while (active.get() > 0) {
+                Thread.sleep(10);
+            }
+        }
+
+        /**
+         * Tops up to the target. A request that fails before it is sent completes on the calling thread;
+         * its refill is left to the loop already running on this thread, which stops after one round.
+         */
+        private void fill() {
+            if (filling.get()) {
+                return;
+            }
+            filling.set(true);
+            try {
+                var launches = target;
+                int current;
+                while (launches > 0 && (current = active.get()) < target) {
+                    if (active.compareAndSet(current, current + 1)) {
+                        launches--;
+                        launch();
+                    }
+                }
+            } finally {
+                filling.set(false);
+            }
+        }
+
+        /** Counted by whichever comes first: its completion, or the end of the step it started in */
+        private void launch() {
+            var request = new InFlight(current, System.nanoTime());
+            inFlight.add(request);
+            runner.execute(scenario, sequence.getAndIncrement()).whenComplete((response, error) -> {
+                if (request.tally != null) {
+                    request.tally.completed(request, System.nanoTime(), error == null);
+                }
+                inFlight.remove(request);
+                active.decrementAndGet();
+                fill();
+            });
+        }
+    }
+
+    /** A request of the closed loop; {@code tally} is null for requests started between steps */
+    private static final class InFlight {
+        final Tally tally;
+        final long start;
+        boolean counted;                            // guarded by the tally
+
+        InFlight(Tally tally, long start) {
+            this.tally = tally;
+            this.start = start;
+        }
+    }
+
+    /** What the requests of one step did: completions, and the ones still running when it ended */
+    private static class Tally {
+        private final Histogram latency = new Histogram(3);
+        private long succeeded;
+        private long failed;
+        private long unfinished;
+        private boolean closed;
+
+        synchronized void completed(InFlight request, long now, boolean success) {
+            if (closed || request.counted) {
+                return;
+            }
+            request.counted = true;
+            latency.recordValue(Math.max(0, TimeUnit.NANOSECONDS.toMicros(now - request.start)));
+            if (success) {
+                succeeded++;
+            } else {
+                failed++;
+            }
+        }
+
+        /** Ends the step: its requests still in flight are recorded at their age at {@code end} */
+        synchronized Step close(Set<InFlight> inFlight, int concurrency, long elapsedNanos, long end) {
+            closed = true;
+            for (var request : inFlight) {
+                if (request.tally == this && !request.counted) {
+                    request.counted = true;
+                    latency.recordValue(Math.max(0, TimeUnit.NANOSECONDS.toMicros(end - request.start)));
+                    unfinished++;
+                }
+            }
+            return new Step(concurrency, succeeded, failed, unfinished, elapsedNanos, latency);
+        }
+    }
+
+    /** What one step at a fixed concurrency measured */
+    public static class Step {
+        public int concurrency;
+        public long completed;
+        public long unfinished;                     // still in flight at the end, in the percentiles at their age then
+        public double throughput;
+        public double errorRate;
+        public double p50Ms;
+        public double p99Ms;
+
+        Step(int concurrency, long succeeded, long failed, long unfinished, long elapsedNanos, Histogram latency) {
+            this.concurrency = concurrency;
+            this.completed = succeeded + failed;
+            this.unfinished = unfinished;
+            this.throughput = completed / (elapsedNanos / 1e9);
+            this.errorRate = completed == 0 ? 0.0 : (double) failed / completed;
+            this.p50Ms = latency.getValueAtPercentile(50) / 1000.0;
+            this.p99Ms = latency.getValueAtPercentile(99) / 1000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("concurrency %d, %.1f req/s, errors %.2f%%, p50 %.2f ms, p99 %.2f ms, %d unfinished",
+                    concurrency, throughput, errorRate * 100, p50Ms, p99Ms, unfinished);
+        }
+    }
+
+    public static class Result {
+        public String scenario;
+        public String endpoint;
+        public int p99BudgetMs;
+        public Step best;
+        public Step firstBreach;
+        public List<Step> steps = new ArrayList<>();
+
+        Result(String scenario, String endpoint, int p99BudgetMs) {
+            this.scenario = scenario;
+            this.endpoint = endpoint;
+            this.p99BudgetMs = p99BudgetMs;
+        }
+
+        @Override
+        public String toString() {
+            return endpoint + ": " + (best == null ? "no step met the budget" : "sustains " + best)
+                    + (firstBreach == null ? ", never breached the budget" : ", first breach at concurrency " + firstBreach.concurrency);
+        }
+    }
+
+    public static class Report {
+        public String generatedAt;
+        public List<Result> results;
+    }
+}
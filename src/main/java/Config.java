@@ -1,8 +1,211 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Settings of a run, read from {@code configuration.yaml} by {@link YamlReader}. Every setting is final, so
+ * the snapshot all threads share cannot be changed; code that needs other settings asks for a
+ * {@link #with(Map)} copy. String defaults go through {@link #text(String)}: a final String field set to a
+ * literal is compiled into the code that reads it, which would never see the value from the file.
+ */
 public class Config {
-    public Host host;
+    public final Host host = null;
+    public final List<Host> targets = new ArrayList<>();  // several API instances to spread load over; empty = host
+    public final Balancing balancing = new Balancing();
+    public final Stub stub = new Stub();
+    public final Client client = new Client();
+    public final Execution execution = new Execution();
+    public final Identity identity = new Identity();
+    public final Tokens tokens = new Tokens();
+    public final Fixtures fixtures = new Fixtures();
+    public final TestData testData = new TestData();
+    public final Load load = new Load();
+    public final Distributed distributed = new Distributed();
+    public final Capacity capacity = new Capacity();
+    public final Reporting reporting = new Reporting();
+    public final History history = new History();
+    public final Logging logging = new Logging();
+    public final Capture capture = new Capture();
+    public final Metrics metrics = new Metrics();
+    public final Sla sla = new Sla();
+    public final Warmup warmup = new Warmup();
+
+    /**
+     * A copy with the settings named by path, as in {@code finbet.} overrides, set to the values given, e.g.
+     * {@code with(Map.of("capture.enabled", false))}; read-only like the shared configuration
+     */
+    public Config with(Map<String, ?> settings) {
+        return YamlReader.override(this, settings);
+    }
+
+    private static String text(String value) {
+        return value;
+    }
 
     public static class Host {
-        public String url;
-        public Integer port;
+        public final String url = null;
+        public final Integer port = null;
+        public final Integer weight = 1;                  // share of requests with the weighted strategy
+    }
+
+    public static class Balancing {
+        public final String strategy = text("round-robin");  // round-robin | least-outstanding | weighted
+        public final Integer healthCheckIntervalSeconds = 5;  // 0 = no health checks
+        public final Integer healthCheckTimeoutMs = 2000;
+        public final Integer unhealthyThreshold = 2;      // failed checks in a row before a target leaves rotation
+        public final Integer healthyThreshold = 2;        // passed checks in a row before it comes back
+    }
+
+    public static class Stub {
+        public final Boolean enabled = false;             // run against the in-process copy of the API instead of host
+        public final String bindAddress = text("127.0.0.1");
+        public final Integer port = 0;                    // 0 = any free port
+        public final Integer threads = 0;                 // 0 = one per processor
+        public final Integer backlog = 1024;
+        public final Integer tokenTtlSeconds = 900;       // later requests with the token get 401 Invalid token
+    }
+
+    public static class Client {
+        public final String transport = text("jdk");      // jdk | nio | class name of a Transport
+        public final Boolean connectionReuse = true;
+        public final Integer connectionPoolSize = 0;      // 0 = no limit on idle connections
+        public final Integer keepAliveTimeoutSeconds = 30;
+        public final Integer executorThreads = 0;         // 0 = default JDK executor
+        public final Integer connectTimeoutMs = 5000;
+        public final Integer requestTimeoutMs = 10000;
+        public final Boolean http2 = false;
+        public final Integer maxConcurrentRequests = 16;  // requests in flight at once, across all test threads
+        public final Integer pipelining = 1;              // nio: requests sent ahead on a busy connection, 1 = none
+        public final Integer nioSelectors = 0;            // nio: event loop threads, 0 = half the processors
+        public final Integer nioBufferKb = 64;            // nio: direct read and write buffer per connection
+    }
+
+    public static class Execution {
+        public final Integer threadCount = 4;             // parallel test methods
+        public final Integer dataProviderThreadCount = 8;  // parallel rows of one data provider
+        public final String threadMode = text("platform");  // platform | virtual (virtual needs the java21 profile)
+    }
+
+    public static class Identity {
+        public final String node = text("t");             // 0-9 | a-z, different on every machine driving one service
+        public final String runSequenceFile = text("~/.finbet-tests/run-sequence");  // where to start looking for a free run
+    }
+
+    public static class Tokens {
+        public final Integer ttlSeconds = 600;            // JWTs expire at their exp claim if that is earlier
+        public final Integer refreshMarginSeconds = 30;   // log in again this long before a token expires
+        public final Integer maxEntries = 10000;
+    }
+
+    public static class Fixtures {
+        public final Integer provisionParallelism = 32;   // registrations in flight while building a user pool
+        public final Integer cleanupParallelism = 8;      // deletes in flight at the end of a run
+        public final String deletePath = null;            // e.g. "user/" for DELETE user/{id}; unset = forget locally
+    }
+
+    public static class TestData {                  // file paths, or resources on the test classpath
+        public final String invalidRegistrations = text("data/invalid-registrations.csv");
+        public final String missingParameters = text("data/missing-parameters.jsonl");
+    }
+
+    public static class Load {
+        public final String scenario = text("health");    // health | register | login | getUser
+        public final Integer arrivalRate = 50;            // requests per second once ramp-up is over
+        public final Integer rampUpSeconds = 10;          // arrival rate grows linearly from 0 during ramp-up
+        public final Integer steadySeconds = 60;
+        public final Integer maxOutstanding = 1000;       // arrivals beyond this many unfinished requests are dropped
+        public final Integer userPoolSize = 20;           // users registered before login/getUser runs start
+        public final String validation = text("streaming");  // tree | streaming response checks
+        public final String identityFile = null;          // pre-generated users for the register scenario, optional
+        public final Map<String, Integer> mix = new LinkedHashMap<>();  // scenario -> weight; empty = scenario alone
+    }
+
+    public static class Distributed {
+        public final String coordinatorHost = text("127.0.0.1");  // address the coordinator binds and workers connect to
+        public final Integer coordinatorPort = 7077;
+        public final Integer workers = 2;                 // the run starts once this many workers have joined
+        public final Integer joinTimeoutSeconds = 120;
+        public final Integer prepareTimeoutSeconds = 300;  // for every worker to report its user pool ready
+        public final Integer graceSeconds = 60;           // past ramp-up + steady before a running worker counts as failed
+        public final Integer progressIntervalSeconds = 5;  // how often workers send their running totals
+    }
+
+    public static class Capacity {
+        public final List<String> scenarios = new ArrayList<>(List.of("register", "login"));
+        public final Integer initialConcurrency = 1;
+        public final Integer additiveIncrease = 2;        // concurrency added after every step within the SLA
+        public final Double multiplicativeDecrease = 0.5;  // concurrency kept after a step that breached it
+        public final Integer stepSeconds = 5;
+        public final Integer maxSteps = 60;
+        public final Integer backoffsToStop = 3;          // a scenario is done after this many breaches
+        public final Integer maxConcurrency = 1000;       // also capped by client.maxConcurrentRequests
+        public final Integer p99Ms = 500;                 // for endpoints without a p99Ms in the sla section
+        public final Double maxErrorRate = 0.01;
+        public final String reportFile = text("target/capacity-report.json");
+    }
+
+    public static class Logging {
+        public final Integer successSampleRate = 100;     // log 1 in this many successful requests; 0 = none, failures always
+        public final Integer maxBodyChars = 2000;         // failed response bodies are cut to this length
+    }
+
+    public static class Capture {
+        public final Boolean enabled = false;             // record every request and response of the run to file
+        public final String file = text("target/traffic.fbtr");
+        public final String replaySpeed = text("1");      // 1 = as recorded, N = N times faster, max = as fast as possible
+        public final List<String> ignoreFields = new ArrayList<>(List.of("id", "access-token"));  // JSON fields that differ between runs
+        public final String replayReportFile = text("target/replay-report.json");
+    }
+
+    public static class Metrics {
+        public final Boolean enabled = false;             // Prometheus text at http://bindAddress:port/metrics
+        public final String bindAddress = text("127.0.0.1");
+        public final Integer port = 9464;                 // 0 = any free port
+        public final Integer consoleIntervalSeconds = 10;  // summary line while requests are running; 0 = none
+        public final Double abortErrorRate = 0.0;         // stop a load run when errors reach this share; 0 = never
+        public final Integer abortIntervalSeconds = 10;   // how often the error rate is checked for abortErrorRate
+        public final Integer abortAfterIntervals = 3;     // ... for this many check intervals in a row
+        public final Integer abortMinRequests = 20;       // intervals with fewer requests do not count
+    }
+
+    public static class Reporting {
+        public final String latencyReportFile = text("target/latency-report.json");
+    }
+
+    public static class History {
+        public final Boolean enabled = true;              // store every run and compare it with the earlier ones
+        public final String directory = text("target/history");  // ~/ for the home directory, to keep runs across clean builds
+        public final Integer baselineRuns = 10;           // latest runs of the same kind and target to compare with
+        public final Integer keepRuns = 50;               // older runs of the same kind and target are deleted
+        public final Integer minBaselineRuns = 3;         // at least 2; fewer earlier runs say too little about run-to-run noise
+        public final Integer minSamples = 30;             // endpoints with fewer requests in a run are not compared
+        public final Double significance = 0.01;          // chance of noise below which a slowdown counts
+        public final Double minSlowdown = 0.10;           // and only when the percentile grew by this share or more
+        public final Boolean failOnRegression = false;
+    }
+
+    public static class Warmup {
+        public final Boolean enabled = true;              // unmeasured traffic before the suites and load runs
+        public final List<String> scenarios = new ArrayList<>(List.of("health", "login"));  // register adds a user per request
+        public final Integer userPoolSize = 4;            // users login and getUser warm up with, registered once per target
+        public final String userDirectory = text("~/.finbet-tests/warmup-users");  // where the pool is kept between runs
+        public final Integer concurrency = 8;             // flows in flight at once
+        public final Integer windowRequests = 50;         // requests per window whose p50 and p90 are compared
+        public final Double tolerance = 0.15;             // settled when they moved less than this share
+        public final Integer stableWindows = 2;           // ... from window to window this many times in a row
+        public final Integer maxSeconds = 30;             // measure anyway after this long
+    }
+
+    public static class Sla {
+        public final Boolean enforcePerRequest = true;    // fail the request that exceeds its endpoint maxMs
+        public final Map<String, Budget> endpoints = new HashMap<>();
+    }
+
+    public static class Budget {
+        public final Integer maxMs = null;                // every single request
+        public final Integer p90Ms = null;                // aggregate over the run
+        public final Integer p99Ms = null;                // aggregate over the run
     }
 }
@@ -0,0 +1,95 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Counts requests and the connections they went out over. A transport that sees its own connections (nio)
+ * reports how many it opened, and that count is used as is. The JDK client publishes no connection events,
+ * so for it the numbers are estimated from pool occupancy: a request reuses a connection when an idle one is
+ * likely available, idle connections are dropped after the keep-alive timeout or when the pool is full, and a
+ * failed request is assumed to lose its connection. The estimate does not model HTTP/2 multiplexing.
+ */
+public class ConnectionStats {
+    private final boolean reuseEnabled;
+    private final int poolSize;
+    private final long keepAliveNanos;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger open = new AtomicInteger();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder opened = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+    private volatile long lastActivity = System.nanoTime();
+    private volatile LongSupplier countedOpened;
+    private volatile long countedBefore;
+
+    public ConnectionStats(Config.Client settings) {
+        this.reuseEnabled = settings.connectionReuse;
+        this.poolSize = settings.connectionPoolSize;
+        this.keepAliveNanos = TimeUnit.SECONDS.toNanos(settings.keepAliveTimeoutSeconds);
+    }
+
+    /** Uses the transport's own count of opened connections instead of the estimate */
+    public void countedBy(LongSupplier connectionsOpened) {
+        this.countedOpened = connectionsOpened;
+    }
+
+    public void requestStarted() {
+        var now = System.nanoTime();
+        requests.increment();
+        var active = inFlight.incrementAndGet();
+        if (active == 1 && now - lastActivity > keepAliveNanos) {
+            open.set(0);
+        }
+        if (!reuseEnabled || open.getAndAccumulate(active, Math::max) < active) {
+            opened.increment();
+        } else {
+            reused.increment();
+        }
+        lastActivity = now;
+    }
+
+    public void requestFinished(boolean failed) {
+        var active = inFlight.decrementAndGet();
+        if (reuseEnabled && failed) {
+            open.decrementAndGet();
+        }
+        if (poolSize > 0) {
+            open.accumulateAndGet(active + poolSize, Math::min);
+        }
+        lastActivity = System.nanoTime();
+    }
+
+    /** Starts the counts over, e.g. after the warm-up; connections still open are reused by what follows */
+    public void reset() {
+        requests.reset();
+        opened.reset();
+        reused.reset();
+        var counted = countedOpened;
+        countedBefore = counted != null ? counted.getAsLong() : 0;
+    }
+
+    /** Connections opened: counted when the transport reports them, estimated otherwise */
+    public long opened() {
+        var counted = countedOpened;
+        return counted != null ? counted.getAsLong() - countedBefore : opened.sum();
+    }
+
+    /** Requests that went out over a connection already open; with counted connections, every request but the ones that opened one */
+    public long reused() {
+        return counted() ? Math.max(0, requests.sum() - opened()) : reused.sum();
+    }
+
+    public boolean counted() {
+        return countedOpened != null;
+    }
+
+    @Override
+    public String toString() {
+        if (counted()) {
+            return "requests: " + requests.sum() + ", connections opened: " + opened() + ", reused: " + reused();
+        }
+        return "requests: " + requests.sum() + ", connections opened: ~" + opened.sum() + ", reused: ~" + reused.sum()
+                + " (estimated from pool occupancy)";
+    }
+}
@@ -0,0 +1,204 @@
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Request URIs of every API instance under test, resolved once from the configuration. Fixed paths are
+ * prebuilt immutable URIs; {@code user/{id}} is expanded by appending the id to a prevalidated prefix.
+ * {@link #next()} picks the target of each request with the configured {@link BalancingStrategy}, among
+ * the targets the health checks consider healthy (all of them when none is). Least-outstanding decides
+ * again in {@link #atSend}, once the request holds a client slot: requests waiting for a slot are not in
+ * flight yet, so the choice made when the request was built would not see them finish.
+ */
+public class Endpoints {
+    private final List<Target> targets;
+    private final Map<String, Target> byAuthority = new HashMap<>();
+    private final BalancingStrategy strategy;
+    private final AtomicInteger nextTarget = new AtomicInteger();
+
+    public Endpoints(Config config) {
+        var hosts = config.targets == null || config.targets.isEmpty() ? List.of(config.host) : config.targets;
+        var targets = new ArrayList<Target>(hosts.size());
+        for (var host : hosts) {
+            var target = new Target(host.url, host.port, host.weight == null ? 1 : host.weight);
+            targets.add(target);
+            byAuthority.put(target.name(), target);
+        }
+        this.targets = List.copyOf(targets);
+        this.strategy = BalancingStrategy.from(config.balancing.strategy);
+    }
+
+    public Target next() {
+        if (targets.size() == 1) {
+            return targets.get(0);
+        }
+        return switch (strategy) {
+            case ROUND_ROBIN -> roundRobin();
+            case LEAST_OUTSTANDING -> leastOutstanding();
+            case WEIGHTED -> weighted();
+        };
+    }
+
+    /**
+     * The request, moved to the target with the fewest requests in flight when the strategy is
+     * least-outstanding; called right before it is sent. Requests outside the targets are left alone.
+     */
+    public HttpRequest atSend(HttpRequest request) {
+        if (strategy != BalancingStrategy.LEAST_OUTSTANDING || targets.size() == 1) {
+            return request;
+        }
+        var current = targetOf(request.uri());
+        if (current == null) {
+            return request;
+        }
+        var target = leastOutstanding();
+        if (target == current) {
+            return request;
+        }
+        var uri = request.uri();
+        var moved = target.base().resolve(uri.getRawQuery() == null ? uri.getRawPath() : uri.getRawPath() + "?" + uri.getRawQuery());
+        return HttpRequest.newBuilder(request, (name, value) -> true).uri(moved).build();
+    }
+
+    public List<Target> targets() {
+        return targets;
+    }
+
+    /** host:port of every target, sorted and comma separated, e.g. to tell runs against different setups apart */
+    public String names() {
+        return targets.stream().map(Target::name).sorted().collect(Collectors.joining(","));
+    }
+
+    public BalancingStrategy strategy() {
+        return strategy;
+    }
+
+    /** The target a request URI points at, or null for a URI outside the configured targets */
+    public Target targetOf(URI uri) {
+        return targets.size() == 1 ? targets.get(0) : byAuthority.get(uri.getAuthority());
+    }
+
+    private Target roundRobin() {
+        var start = nextTarget.getAndIncrement();
+        for (int i = 0; i < targets.size(); i++) {
+            var target = targets.get(Math.floorMod(start + i, targets.size()));
+            if (target.healthy()) {
+                return target;
+            }
+        }
+        return targets.get(Math.floorMod(start, targets.size()));
+    }
+
+    /** Fewest requests in flight; the scan starts at a rotating offset so ties do not all land on the first target */
+    private Target leastOutstanding() {
+        var start = nextTarget.getAndIncrement();
+        Target best = null;
+        for (int i = 0; i < targets.size(); i++) {
+            var target = targets.get(Math.floorMod(start + i, targets.size()));
+            if (target.healthy() && (best == null || target.outstanding() < best.outstanding())) {
+                best = target;
+            }
+        }
+        return best != null ? best : targets.get(Math.floorMod(start, targets.size()));
+    }
+
+    private Target weighted() {
+        var totalWeight = 0;
+        for (var target : targets) {
+            totalWeight += target.healthy() ? target.weight() : 0;
+        }
+        if (totalWeight == 0) {
+            return roundRobin();
+        }
+        var pick = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (var target : targets) {
+            if (target.healthy()) {
+                pick -= target.weight();
+                if (pick < 0) {
+                    return target;
+                }
+            }
+        }
+        return targets.get(targets.size() - 1);
+    }
+
+    /** One API instance; its URIs never change after construction, its health and load do */
+    public static class Target {
+        private final URI base;
+        private final URI health;
+        private final URI register;
+        private final URI login;
+        private final String userPrefix;
+        private final Map<String, URI> fixed = new HashMap<>();
+        private final int weight;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private volatile boolean healthy = true;
+
+        Target(String host, int port, int weight) {
+            this.base = URI.create("http://" + host + ":" + port + "/");
+            if (base.getHost() == null) {
+                throw new IllegalArgumentException("Invalid target host: " + host + ":" + port);
+            }
+            if (weight < 1) {
+                throw new IllegalArgumentException("Weight of " + host + ":" + port + " must be at least 1");
+            }
+            this.weight = weight;
+            this.health = fixed(BaseClass.HEALTH_PATH);
+            this.register = fixed(BaseClass.REGISTER_PATH);
+            this.login = fixed(BaseClass.LOGIN_PATH);
+            this.userPrefix = base + BaseClass.USER_PATH;
+        }
+
+        private URI fixed(String path) {
+            var uri = base.resolve(path);
+            fixed.put(path, uri);
+            return uri;
+        }
+
+        public URI base() { return base; }
+
+        public URI health() { return health; }
+
+        public URI register() { return register; }
+
+        public URI login() { return login; }
+
+        public URI user(int userId) {
+            return URI.create(userPrefix + userId);
+        }
+
+        /** Prebuilt URI for the fixed paths, resolved against the base for anything else */
+        public URI resolve(String path) {
+            var uri = fixed.get(path);
+            return uri != null ? uri : base.resolve(path);
+        }
+
+        /** host:port, the name of this target in logs and per-target statistics */
+        public String name() {
+            return base.getAuthority();
+        }
+
+        public int weight() { return weight; }
+
+        public int outstanding() { return outstanding.get(); }
+
+        void requestStarted() { outstanding.incrementAndGet(); }
+
+        void requestFinished() { outstanding.decrementAndGet(); }
+
+        public boolean healthy() { return healthy; }
+
+        void setHealthy(boolean healthy) { this.healthy = healthy; }
+
+        @Override
+        public String toString() {
+            return name();
+        }
+    }
+}
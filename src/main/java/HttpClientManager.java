@@ -0,0 +1,273 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/** Owns the single {@link Transport} shared by a suite, created on first use and released by {@link #shutdown()} */
+public class HttpClientManager {
+    private static final Logger logger = LoggerFactory.getLogger(HttpClientManager.class);
+
+    static {
+        allowConnectionHeader();
+    }
+
+    private final Config.Client settings;
+    private final ThreadMode threadMode;
+    private final ConnectionStats stats;
+    private final RequestLimiter inFlight;
+    private final LatencyRecorder latencyRecorder = new LatencyRecorder();
+    private final LatencyRecorder targetLatency = new LatencyRecorder();
+    private final LatencySla sla;
+    private final RequestLog requestLog;
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final Endpoints endpoints;
+    private final TrafficLog.Writer capture;
+    private Transport transport;
+    private volatile boolean measuring = true;
+
+    public HttpClientManager(Config config) {
+        this(config, new Endpoints(config));
+    }
+
+    public HttpClientManager(Config config, Endpoints endpoints) {
+        this.endpoints = endpoints;
+        this.settings = config.client;
+        this.threadMode = ThreadMode.of(config.execution);
+        this.stats = new ConnectionStats(settings);
+        this.inFlight = new RequestLimiter(settings.maxConcurrentRequests);
+        this.sla = new LatencySla(config.sla);
+        this.requestLog = new RequestLog(config.logging);
+        metrics.watchLimiter(inFlight);
+        if (!settings.connectionReuse) {
+            checkConnectionHeader();
+        }
+        try {
+            this.capture = config.capture.enabled ? new TrafficLog.Writer(Path.of(config.capture.file)) : null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the traffic capture " + config.capture.file, e);
+        }
+    }
+
+    /**
+     * Lets requests carry {@code Connection: close}. The JDK reads the property once per JVM, when the first
+     * request is built, so it is set as soon as this class is loaded, whatever a manager's settings.
+     */
+    private static void allowConnectionHeader() {
+        var allowed = System.getProperty("jdk.httpclient.allowRestrictedHeaders");
+        if (allowed == null || allowed.isBlank()) {
+            System.setProperty("jdk.httpclient.allowRestrictedHeaders", "connection");
+        } else if (Arrays.stream(allowed.split(",")).map(String::trim).noneMatch("connection"::equalsIgnoreCase)) {
+            System.setProperty("jdk.httpclient.allowRestrictedHeaders", allowed + ",connection");
+        }
+    }
+
+    /** Fails now instead of at the first request when a request was built before this class set the property */
+    private static void checkConnectionHeader() {
+        try {
+            HttpRequest.newBuilder().header("Connection", "close");
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("connectionReuse: false needs the Connection header, but a request was built "
+                    + "before it was allowed; start the JVM with -Djdk.httpclient.allowRestrictedHeaders=connection", e);
+        }
+    }
+
+    public synchronized Transport transport() {
+        if (transport == null) {
+            transport = Transport.create(settings, threadMode);
+            metrics.watchClientPool(transport.executor());
+            if (transport.connectionsOpened() >= 0) {
+                stats.countedBy(transport::connectionsOpened);
+            }
+        }
+        return transport;
+    }
+
+    public HttpRequest.Builder newRequest(URI uri) {
+        var builder = HttpRequest.newBuilder()
+                .uri(uri)
+                .timeout(Duration.ofMillis(settings.requestTimeoutMs));
+
+        if (!settings.connectionReuse) {
+            builder.header("Connection", "close");
+        }
+        return builder;
+    }
+
+    /** Blocks while {@code maxConcurrentRequests} requests are already in flight */
+    public HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        return send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    public <T> HttpResponse<T> send(HttpRequest built, HttpResponse.BodyHandler<T> bodyHandler) throws IOException, InterruptedException {
+        inFlight.acquire();
+        var request = endpoints.atSend(built);
+        var sent = started(request);
+        HttpResponse<T> response;
+        try {
+            response = transport().send(request, sent.handler(bodyHandler));
+        } catch (IOException | InterruptedException | RuntimeException | Error e) {
+            finished(request, sent, null, e);
+            throw e;
+        }
+        var latency = finished(request, sent, response, null);
+        if (sent.measured()) {
+            LatencyCapture.record(TimeUnit.NANOSECONDS.toMicros(latency));
+        }
+        sla.checkRequest(LatencyRecorder.endpointOf(request.uri()), latency);
+        return response;
+    }
+
+    /** Waits for a free slot without blocking the calling thread */
+    public CompletableFuture<HttpResponse<String>> sendAsync(HttpRequest request) {
+        return sendAsync(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest built, HttpResponse.BodyHandler<T> bodyHandler) {
+        return inFlight.acquireAsync().thenCompose(ignored -> {
+            var request = endpoints.atSend(built);
+            var sent = started(request);
+            CompletableFuture<HttpResponse<T>> response;
+            try {
+                response = transport().sendAsync(request, sent.handler(bodyHandler));
+            } catch (RuntimeException e) {
+                response = CompletableFuture.failedFuture(e);
+            }
+            return response.handle((result, error) -> {
+                var latency = finished(request, sent, result, error);
+                if (error != null) {
+                    throw error instanceof CompletionException completion ? completion : new CompletionException(error);
+                }
+                sla.checkRequest(LatencyRecorder.endpointOf(request.uri()), latency);
+                return result;
+            });
+        });
+    }
+
+    /** Sends a health probe straight to the client: it takes no slot and is left out of stats and latencies */
+    public CompletableFuture<HttpResponse<String>> probe(URI uri, Duration timeout) {
+        var request = newRequest(uri).timeout(timeout).GET().build();
+        return transport().sendAsync(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * While off, requests still go out, count against the limits and log their failures, but are left out of
+     * latencies, metrics, sampled log lines and the capture. Connection stats start over when it is turned
+     * back on. For the {@link Warmup}.
+     */
+    public synchronized void measure(boolean measuring) {
+        if (measuring && !this.measuring) {
+            stats.reset();
+        }
+        this.measuring = measuring;
+    }
+
+    public ConnectionStats stats() {
+        return stats;
+    }
+
+    public LatencyRecorder latencyRecorder() {
+        return latencyRecorder;
+    }
+
+    /** Latency per target, keyed by the target's name instead of the endpoint */
+    public LatencyRecorder targetLatency() {
+        return targetLatency;
+    }
+
+    public Endpoints endpoints() {
+        return endpoints;
+    }
+
+    public MetricsRegistry metrics() {
+        return metrics;
+    }
+
+    public LatencySla sla() {
+        return sla;
+    }
+
+    public synchronized void shutdown() {
+        if (capture != null) {
+            try {
+                capture.close();
+            } catch (IOException e) {
+                logger.warn("Could not close the traffic capture: " + e.getMessage());
+            }
+        }
+        if (transport == null) {
+            return;
+        }
+        logger.info("Shutting down HTTP client, " + stats);
+        transport.close();
+        transport = null;
+    }
+
+    private Sent started(HttpRequest request) {
+        stats.requestStarted();
+        metrics.requestStarted();
+        var target = endpoints.targetOf(request.uri());
+        if (target != null) {
+            target.requestStarted();
+        }
+        var measured = measuring;
+        if (capture == null || !measured) {
+            return new Sent(target, -1, null, measured, System.nanoTime());
+        }
+        return new Sent(target, capture.begin(), new TrafficLog.BodyCopy(), true, System.nanoTime());
+    }
+
+    /** Records and logs the request and frees its slot, returning its latency in nanoseconds */
+    private long finished(HttpRequest request, Sent sent, HttpResponse<?> response, Throwable error) {
+        var latency = System.nanoTime() - sent.start();
+        var target = sent.target();
+        var endpoint = LatencyRecorder.endpointOf(request.uri());
+        var statusCode = response == null ? LatencyRecorder.NO_RESPONSE : response.statusCode();
+        var measured = sent.measured();
+        if (measured) {
+            latencyRecorder.record(endpoint, statusCode, latency);
+        }
+        if (response == null) {
+            requestLog.failed(request, error, latency);
+        } else {
+            requestLog.completed(request, response, latency, measured);
+        }
+        if (!measured) {
+            metrics.requestDiscarded();
+        } else if (response == null) {
+            metrics.requestFinished(endpoint, statusCode, latency, LoadPhaseStats.errorKind(error));
+        } else {
+            metrics.requestFinished(endpoint, statusCode, latency,
+                    statusCode / 100 == 2 ? null : MetricsRegistry.errorOf(statusCode, response.body()));
+        }
+        if (target != null) {
+            target.requestFinished();
+            if (measured) {
+                targetLatency.record(target.name(), statusCode, latency);
+            }
+        }
+        if (capture != null && measured) {
+            capture.finished(sent.sequence(), request, sent.start(), latency, response, sent.body(), error);
+        }
+        stats.requestFinished(statusCode == LatencyRecorder.NO_RESPONSE);
+        inFlight.release();
+        return latency;
+    }
+
+    /** What {@link #finished} needs to know about a request it did not see being sent */
+    private record Sent(Endpoints.Target target, long sequence, TrafficLog.BodyCopy body, boolean measured, long start) {
+        /** While capturing, the handler also copies the body for the capture */
+        <T> HttpResponse.BodyHandler<T> handler(HttpResponse.BodyHandler<T> handler) {
+            return body == null ? handler : body.copying(handler);
+        }
+    }
+}
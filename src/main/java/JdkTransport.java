@@ -0,0 +1,80 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+/** The default engine: the JDK's {@link HttpClient}, with its own connection pool and HTTP/2 support */
+public class JdkTransport implements Transport {
+    private static final Logger logger = LoggerFactory.getLogger(JdkTransport.class);
+    private static Config.Client poolSettings;
+    private final HttpClient client;
+    private final ExecutorService executor;
+
+    public JdkTransport(Config.Client settings, ThreadMode threadMode) {
+        applyPoolSettings(settings);
+
+        var builder = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(settings.connectTimeoutMs))
+                .version(settings.http2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1);
+
+        if (threadMode == ThreadMode.VIRTUAL || settings.executorThreads > 0) {
+            executor = threadMode.newExecutor("http-client-", settings.executorThreads);
+            builder.executor(executor);
+        } else {
+            executor = null;
+        }
+
+        logger.info("Creating HTTP client, version: " + (settings.http2 ? "HTTP/2" : "HTTP/1.1")
+                + ", executor: " + (threadMode == ThreadMode.VIRTUAL ? "virtual threads" : settings.executorThreads + " threads")
+                + ", connection reuse: " + settings.connectionReuse);
+        client = builder.build();
+    }
+
+    /**
+     * The JDK client reads its keep-alive timeout and pool size from system properties once per JVM, when the
+     * first client is created. They are set by the first transport; a later one that asks for other values
+     * fails instead of silently running with the first one's.
+     */
+    private static synchronized void applyPoolSettings(Config.Client settings) {
+        if (poolSettings == null) {
+            System.setProperty("jdk.httpclient.keepalive.timeout", settings.keepAliveTimeoutSeconds.toString());
+            System.setProperty("jdk.httpclient.connectionPoolSize", settings.connectionPoolSize.toString());
+            poolSettings = settings;
+        } else if (!poolSettings.keepAliveTimeoutSeconds.equals(settings.keepAliveTimeoutSeconds)
+                || !poolSettings.connectionPoolSize.equals(settings.connectionPoolSize)) {
+            throw new IllegalStateException("The JDK client of this JVM runs with keepAliveTimeoutSeconds "
+                    + poolSettings.keepAliveTimeoutSeconds + " and connectionPoolSize " + poolSettings.connectionPoolSize
+                    + "; they are read once per JVM, so a client with " + settings.keepAliveTimeoutSeconds + " and "
+                    + settings.connectionPoolSize + " cannot be created");
+        }
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) {
+        return client.sendAsync(request, bodyHandler);
+    }
+
+    @Override
+    public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) throws IOException, InterruptedException {
+        return client.send(request, bodyHandler);
+    }
+
+    @Override
+    public Executor executor() {
+        return executor;
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,6 @@
+/** Assertion failure for a request or a percentile over its latency budget */
+public class LatencyBudgetExceededError extends AssertionError {
+    public LatencyBudgetExceededError(String message) {
+        super(message);
+    }
+}
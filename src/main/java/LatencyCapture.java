@@ -0,0 +1,34 @@
+import org.HdrHistogram.Histogram;
+
+/**
+ * Latencies of the blocking requests sent by one thread while a capture is active, used to check the
+ * budget of a single test method. Requests completed on other threads (async stages) are not captured.
+ */
+public class LatencyCapture {
+    private static final ThreadLocal<LatencyCapture> current = new ThreadLocal<>();
+    private final Histogram histogram = new Histogram(3);
+
+    public static LatencyCapture start() {
+        var capture = new LatencyCapture();
+        current.set(capture);
+        return capture;
+    }
+
+    public static LatencyCapture stop() {
+        var capture = current.get();
+        current.remove();
+        return capture;
+    }
+
+    static void record(long latencyMicros) {
+        var capture = current.get();
+        if (capture != null) {
+            capture.histogram.recordValue(latencyMicros);
+        }
+    }
+
+    /** Latencies in microseconds */
+    public Histogram histogram() {
+        return histogram;
+    }
+}
@@ -0,0 +1,149 @@
+import com.fasterxml.jackson.annotation.JsonInclude;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+
+/**
+ * Per endpoint and status code latency histograms for every request sent through the client. Values are
+ * recorded in microseconds into concurrent HdrHistograms, so any thread can record while another reads.
+ */
+public class LatencyRecorder {
+    public static final int NO_RESPONSE = 0;
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private final ConcurrentHashMap<Key, Histogram> histograms = new ConcurrentHashMap<>();
+
+    public void record(String endpoint, int statusCode, long latencyNanos) {
+        histograms.computeIfAbsent(new Key(endpoint, statusCode), key -> new ConcurrentHistogram(SIGNIFICANT_DIGITS))
+                .recordValue(Math.max(0, TimeUnit.NANOSECONDS.toMicros(latencyNanos)));
+    }
+
+    /** Copy of the histogram for one endpoint and status, empty when nothing was recorded */
+    public Histogram histogram(String endpoint, int statusCode) {
+        var histogram = histograms.get(new Key(endpoint, statusCode));
+        return histogram == null ? new Histogram(SIGNIFICANT_DIGITS) : histogram.copy();
+    }
+
+    /** All status codes of one endpoint merged together */
+    public Histogram histogram(String endpoint) {
+        var merged = new Histogram(SIGNIFICANT_DIGITS);
+        histograms.forEach((key, histogram) -> {
+            if (key.endpoint().equals(endpoint)) {
+                merged.add(histogram);
+            }
+        });
+        return merged;
+    }
+
+    /** Merges entries recorded elsewhere, e.g. by the workers of a distributed run */
+    public void add(List<Entry> entries) {
+        for (var entry : entries) {
+            histograms.computeIfAbsent(new Key(entry.endpoint, entry.status), key -> new ConcurrentHistogram(SIGNIFICANT_DIGITS))
+                    .add(decode(entry.histogram));
+        }
+    }
+
+    public void reset() {
+        histograms.values().forEach(Histogram::reset);
+    }
+
+    public List<Entry> entries() {
+        var entries = new ArrayList<Entry>();
+        histograms.forEach((key, histogram) -> entries.add(Entry.of(key.endpoint(), key.statusCode(), histogram.copy())));
+        entries.sort(Comparator.comparing((Entry entry) -> entry.endpoint).thenComparingInt(entry -> entry.status));
+        return entries;
+    }
+
+    /** Writes the percentiles together with the encoded histograms, so reports of several runs can be merged */
+    public void writeReport(Path file) throws IOException {
+        writeReport(file, null);
+    }
+
+    /** Same report with a second section of per-target entries, whose endpoint is the target's host:port */
+    public void writeReport(Path file, LatencyRecorder targets) throws IOException {
+        var report = new Report();
+        report.generatedAt = Instant.now().toString();
+        report.entries = entries();
+        report.targets = targets == null ? null : targets.entries();
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        Serialization.mapper().writerWithDefaultPrettyPrinter().writeValue(file.toFile(), report);
+    }
+
+    /** Endpoint name for a request URI, with user ids folded into {@code user/{id}} */
+    public static String endpointOf(URI uri) {
+        var path = uri.getPath();
+        if (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        if (path.startsWith(BaseClass.USER_PATH)) {
+            return BaseClass.USER_PATH + "{id}";
+        }
+        return path;
+    }
+
+    public static Histogram decode(String encoded) {
+        try {
+            return Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(Base64.getDecoder().decode(encoded)), 0);
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Invalid encoded histogram", e);
+        }
+    }
+
+    public static String encode(Histogram histogram) {
+        var buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+        var length = histogram.encodeIntoCompressedByteBuffer(buffer);
+        return Base64.getEncoder().encodeToString(Arrays.copyOf(buffer.array(), length));
+    }
+
+    private record Key(String endpoint, int statusCode) {}
+
+    public static class Report {
+        public String generatedAt;
+        public List<Entry> entries;
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        public List<Entry> targets;
+    }
+
+    public static class Entry {
+        public String endpoint;
+        public int status;
+        public long count;
+        public double meanMs;
+        public double p50Ms;
+        public double p90Ms;
+        public double p99Ms;
+        public double p999Ms;
+        public double maxMs;
+        public String histogram;
+
+        static Entry of(String endpoint, int status, Histogram histogram) {
+            var entry = new Entry();
+            entry.endpoint = endpoint;
+            entry.status = status;
+            entry.count = histogram.getTotalCount();
+            entry.meanMs = histogram.getMean() / 1000.0;
+            entry.p50Ms = histogram.getValueAtPercentile(50) / 1000.0;
+            entry.p90Ms = histogram.getValueAtPercentile(90) / 1000.0;
+            entry.p99Ms = histogram.getValueAtPercentile(99) / 1000.0;
+            entry.p999Ms = histogram.getValueAtPercentile(99.9) / 1000.0;
+            entry.maxMs = histogram.getMaxValue() / 1000.0;
+            entry.histogram = encode(histogram);
+            return entry;
+        }
+    }
+}
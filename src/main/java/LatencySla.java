@@ -0,0 +1,60 @@
+import org.HdrHistogram.Histogram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** Checks request latencies against the budgets in the sla section of the configuration */
+public class LatencySla {
+    private final Config.Sla settings;
+
+    public LatencySla(Config.Sla settings) {
+        this.settings = settings;
+    }
+
+    /** Fails a single request slower than the maxMs of its endpoint */
+    public void checkRequest(String endpoint, long latencyNanos) {
+        var budget = settings.endpoints.get(endpoint);
+        if (!settings.enforcePerRequest || budget == null || budget.maxMs == null) {
+            return;
+        }
+        var latencyMs = TimeUnit.NANOSECONDS.toMillis(latencyNanos);
+        if (latencyMs > budget.maxMs) {
+            throw new LatencyBudgetExceededError("Request to " + endpoint + " took " + latencyMs
+                    + " ms, budget is " + budget.maxMs + " ms");
+        }
+    }
+
+    /** Aggregate percentile budgets of every endpoint, checked against everything recorded so far */
+    public List<String> verify(LatencyRecorder recorder) {
+        var violations = new ArrayList<String>();
+        for (Map.Entry<String, Config.Budget> entry : settings.endpoints.entrySet()) {
+            var budget = entry.getValue();
+            violations.addAll(verify(entry.getKey(), recorder.histogram(entry.getKey()), budget.p90Ms, budget.p99Ms));
+        }
+        return violations;
+    }
+
+    /** Percentile budgets for one histogram in microseconds; null budgets and empty histograms pass */
+    public static List<String> verify(String name, Histogram histogram, Integer p90Ms, Integer p99Ms) {
+        var violations = new ArrayList<String>();
+        if (histogram.getTotalCount() == 0) {
+            return violations;
+        }
+        checkPercentile(violations, name, histogram, 90, p90Ms);
+        checkPercentile(violations, name, histogram, 99, p99Ms);
+        return violations;
+    }
+
+    private static void checkPercentile(List<String> violations, String name, Histogram histogram, double percentile, Integer budgetMs) {
+        if (budgetMs == null) {
+            return;
+        }
+        var valueMs = histogram.getValueAtPercentile(percentile) / 1000.0;
+        if (valueMs > budgetMs) {
+            violations.add(String.format("%s p%.0f is %.1f ms over %d requests, budget is %d ms",
+                    name, percentile, valueMs, histogram.getTotalCount(), budgetMs));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/** Newline-delimited JSON {@link LoadMessage}s over one socket; sending is safe from several threads */
+public class LoadChannel implements Closeable {
+    private final Socket socket;
+    private final BufferedReader reader;
+    private final BufferedWriter writer;
+
+    public LoadChannel(Socket socket) throws IOException {
+        this.socket = socket;
+        socket.setTcpNoDelay(true);
+        this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        this.writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+    }
+
+    public synchronized void send(LoadMessage message) throws IOException {
+        writer.write(Serialization.mapper().writeValueAsString(message));
+        writer.newLine();
+        writer.flush();
+    }
+
+    /** The next message, or null once the other side has closed the connection */
+    public LoadMessage receive() throws IOException {
+        var line = reader.readLine();
+        return line == null ? null : Serialization.mapper().readValue(line, LoadMessage.class);
+    }
+
+    /** Fails unless the next message has the given type */
+    public LoadMessage expect(LoadMessage.Type type) throws IOException {
+        var message = receive();
+        if (message == null) {
+            throw new IOException("Connection to " + peer() + " closed while waiting for " + type);
+        }
+        if (message.type == LoadMessage.Type.FAILED) {
+            throw new IOException(peer() + " failed: " + message.error);
+        }
+        if (message.type != type) {
+            throw new IOException("Expected " + type + " from " + peer() + " but got " + message.type);
+        }
+        return message;
+    }
+
+    public String peer() {
+        return socket.getRemoteSocketAddress().toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
@@ -0,0 +1,318 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splits a load run over several worker JVMs ({@link LoadWorker}), possibly on other machines. Every worker
+ * gets an equal share of the arrival rate and user pool for the same scenario mix, plus its own range of
+ * username counters within one run number, so workers never register the same user. The coordinator starts
+ * all workers together once their user pools are ready, logs their merged progress and writes one latency
+ * report from the histograms they send back.
+ *
+ * Run with {@code mvn compile exec:java -Dexec.mainClass=LoadCoordinator [-Dexec.args="<mix> <workers>"]},
+ * then start the workers.
+ */
+public class LoadCoordinator {
+    private static final Logger logger = LoggerFactory.getLogger(LoadCoordinator.class);
+    private static final int HELLO_TIMEOUT_MS = 10_000;     // workers say hello as soon as they are connected
+    private final Config config;
+    private final Config.Distributed settings;
+    private final RunHistory history;
+
+    public LoadCoordinator(Config config) {
+        this.config = config;
+        this.settings = config.distributed;
+        this.history = config.history.enabled ? new RunHistory(config.history) : null;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        var config = YamlReader.config();
+
+        var mix = args.length > 0 ? LoadMix.parse(args[0]) : LoadMix.from(config.load);
+        var workers = args.length > 1 ? Integer.parseInt(args[1]) : config.distributed.workers;
+        if (!new LoadCoordinator(config).run(mix, workers)) {
+            throw new IllegalStateException("Distributed load run failed, see the worker errors above");
+        }
+    }
+
+    /** Runs the mix on {@code count} workers; returns false when any worker failed */
+    public boolean run(LoadMix mix, int count) throws IOException, InterruptedException {
+        if (count < 1 || config.load.arrivalRate < count) {
+            throw new IllegalArgumentException("Need at least one worker and one request per second per worker, got "
+                    + count + " workers for " + config.load.arrivalRate + " req/s");
+        }
+        var workers = join(mix, count);
+        var executor = ThreadMode.PLATFORM.newExecutor("coordinator-", count);
+        try {
+            var ready = new CountDownLatch(count);
+            var done = new CountDownLatch(count);
+            for (var worker : workers) {
+                executor.execute(() -> worker.listen(ready, done));
+            }
+            if (!ready.await(settings.prepareTimeoutSeconds, TimeUnit.SECONDS)) {
+                workers.stream().filter(worker -> !worker.prepared()).forEach(worker ->
+                        worker.fail("was not ready within " + settings.prepareTimeoutSeconds + " s"));
+            }
+            if (workers.stream().anyMatch(Worker::failed)) {
+                logger.error("Not starting, a worker failed while preparing");
+                return false;
+            }
+            for (var worker : workers) {
+                worker.channel.send(LoadMessage.of(LoadMessage.Type.START));
+            }
+            logger.info("Started " + mix + " load on " + count + " workers");
+
+            var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(
+                    config.load.rampUpSeconds + config.load.steadySeconds + settings.graceSeconds);
+            while (!done.await(settings.progressIntervalSeconds, TimeUnit.SECONDS)) {
+                logPhases("Progress", workers);
+                if (System.nanoTime() > deadline) {
+                    workers.stream().filter(worker -> !worker.finished()).forEach(worker ->
+                            worker.fail("was still running " + settings.graceSeconds + " s after the run should have ended"));
+                    break;
+                }
+            }
+            logPhases("Load run finished", workers);
+            var endpoints = writeReport(workers);
+            if (history != null) {
+                var duration = TimeUnit.SECONDS.toNanos(config.load.rampUpSeconds + config.load.steadySeconds);
+                var run = RunHistory.of("load-" + mix.key(), RunHistory.targetOf(config, new Endpoints(config)), endpoints, duration);
+                history.record(run);
+            }
+            return workers.stream().noneMatch(Worker::failed);
+        } finally {
+            executor.shutdownNow();
+            for (var worker : workers) {
+                worker.channel.close();
+            }
+        }
+    }
+
+    /** Accepts workers until {@code count} have said hello, handing each its slice straight away */
+    private List<Worker> join(LoadMix mix, int count) throws IOException {
+        var run = claimRun();
+        var workers = new ArrayList<Worker>(count);
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(settings.joinTimeoutSeconds);
+        try (var server = new ServerSocket()) {
+            server.bind(new InetSocketAddress(settings.coordinatorHost, settings.coordinatorPort));
+            logger.info("Coordinator listening on " + server.getLocalSocketAddress() + ", waiting for " + count + " workers");
+            while (workers.size() < count) {
+                server.setSoTimeout(remainingMillis(deadline));
+                Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (SocketTimeoutException e) {
+                    workers.forEach(Worker::closeQuietly);
+                    throw new IOException("Only " + workers.size() + " of " + count + " workers joined within "
+                            + settings.joinTimeoutSeconds + " s");
+                }
+                LoadChannel channel;
+                LoadMessage hello;
+                try {
+                    // A connection that never says hello (a port probe, a stuck worker) must not hold up the join
+                    socket.setSoTimeout(Math.min(HELLO_TIMEOUT_MS, remainingMillis(deadline)));
+                    channel = new LoadChannel(socket);
+                    hello = channel.expect(LoadMessage.Type.HELLO);
+                    socket.setSoTimeout(0);
+                } catch (IOException e) {
+                    logger.warn("Dropped a connection from " + socket.getRemoteSocketAddress() + " that did not say hello: " + e);
+                    closeQuietly(socket);
+                    continue;
+                }
+                var worker = new Worker(hello.worker, channel);
+                var message = LoadMessage.of(LoadMessage.Type.SLICE);
+                message.slice = slice(mix, run, workers.size(), count);
+                channel.send(message);
+                workers.add(worker);
+                logger.info("Worker " + worker.name + " joined from " + channel.peer() + " with "
+                        + message.slice.load.arrivalRate + " req/s, usernames " + message.slice.firstId + "-" + message.slice.idLimit);
+            }
+        }
+        return workers;
+    }
+
+    private static int remainingMillis(long deadline) {
+        return (int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // nothing was sent to it
+        }
+    }
+
+    /** Claims the run all workers share on the target; the stubs of workers start empty, so any run is free there */
+    private int claimRun() throws IOException {
+        if (config.stub.enabled) {
+            return UserIdentityGenerator.claimRun(config.identity, marker -> true);
+        }
+        var client = new HttpClientManager(config);
+        try {
+            return UserIdentityGenerator.claimRun(config.identity, UserIdentityGenerator.RunClaim.over(client));
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    private LoadMessage.Slice slice(LoadMix mix, int run, int index, int count) {
+        var overrides = new HashMap<String, Object>();
+        overrides.put("load.arrivalRate", share(config.load.arrivalRate, index, count));
+        overrides.put("load.userPoolSize", Math.max(1, share(config.load.userPoolSize, index, count)));
+        overrides.put("load.mix", mix.toConfig());
+        overrides.put("load.identityFile", null);
+        var load = config.with(overrides).load;
+
+        var idsPerWorker = (UserIdentityGenerator.USERS_PER_RUN - UserIdentityGenerator.FIRST_COUNTER) / count;
+        var slice = new LoadMessage.Slice();
+        slice.index = index;
+        slice.workers = count;
+        slice.load = load;
+        slice.node = config.identity.node;
+        slice.run = run;
+        slice.firstId = UserIdentityGenerator.FIRST_COUNTER + index * idsPerWorker;
+        slice.idLimit = slice.firstId + idsPerWorker;
+        slice.progressIntervalSeconds = settings.progressIntervalSeconds;
+        return slice;
+    }
+
+    /** Worker {@code index}'s part of {@code total}, the remainder going to the first workers */
+    private static int share(int total, int index, int count) {
+        return total / count + (index < total % count ? 1 : 0);
+    }
+
+    private void logPhases(String prefix, List<Worker> workers) {
+        var running = workers.stream().filter(worker -> !worker.finished()).count();
+        for (var phase : mergePhases(workers)) {
+            logger.info(prefix + " (" + running + " of " + workers.size() + " workers running), " + phase);
+        }
+    }
+
+    private static List<LoadPhaseStats> mergePhases(List<Worker> workers) {
+        var merged = new ArrayList<LoadPhaseStats>();
+        for (var worker : workers) {
+            var phases = worker.phases;
+            for (int i = 0; phases != null && i < phases.size(); i++) {
+                if (merged.size() <= i) {
+                    merged.add(new LoadPhaseStats(phases.get(i).name, phases.get(i).durationNanos));
+                }
+                merged.get(i).add(phases.get(i));
+            }
+        }
+        return merged;
+    }
+
+    /** Merges the workers' histograms into one report, returning the merged endpoint latencies */
+    private LatencyRecorder writeReport(List<Worker> workers) throws IOException {
+        var endpoints = new LatencyRecorder();
+        var targets = new LatencyRecorder();
+        for (var worker : workers) {
+            if (worker.endpoints != null) {
+                endpoints.add(worker.endpoints);
+            }
+            if (worker.targets != null) {
+                targets.add(worker.targets);
+            }
+        }
+        new LatencySla(config.sla).verify(endpoints).forEach(violation -> logger.warn("Latency budget exceeded: " + violation));
+        var file = Path.of(config.reporting.latencyReportFile);
+        endpoints.writeReport(file, targets);
+        logger.info("Merged latency report of " + workers.size() + " workers written to " + file.toAbsolutePath());
+        return endpoints;
+    }
+
+    /** The coordinator's view of one worker, updated by the thread reading its connection */
+    private static class Worker {
+        private final String name;
+        private final LoadChannel channel;
+        private volatile List<LoadPhaseStats.Snapshot> phases;
+        private volatile List<LatencyRecorder.Entry> endpoints;
+        private volatile List<LatencyRecorder.Entry> targets;
+        private volatile boolean prepared;
+        private volatile boolean finished;
+        private volatile boolean failed;
+
+        Worker(String name, LoadChannel channel) {
+            this.name = name;
+            this.channel = channel;
+        }
+
+        boolean finished() { return finished; }
+
+        boolean failed() { return failed; }
+
+        boolean prepared() { return prepared; }
+
+        /** Gives up on the worker: counts it as failed and closes its connection, which ends its listener */
+        void fail(String reason) {
+            failed = true;
+            logger.error("Worker " + name + " " + reason + ", giving up on it");
+            closeQuietly();
+        }
+
+        /** Reads messages until DONE, FAILED or a closed connection, counting down both latches exactly once */
+        void listen(CountDownLatch ready, CountDownLatch done) {
+            var readySent = false;
+            try {
+                LoadMessage message;
+                while ((message = channel.receive()) != null) {
+                    switch (message.type) {
+                        case READY -> {
+                            readySent = true;
+                            prepared = true;
+                            ready.countDown();
+                        }
+                        case PROGRESS -> phases = message.phases;
+                        case DONE -> {
+                            phases = message.phases;
+                            endpoints = message.endpoints;
+                            targets = message.targets;
+                            return;
+                        }
+                        case FAILED -> {
+                            failed = true;
+                            logger.error("Worker " + name + " failed: " + message.error);
+                            return;
+                        }
+                        default -> logger.warn("Ignoring unexpected " + message.type + " from worker " + name);
+                    }
+                }
+                if (!failed) {
+                    failed = true;
+                    logger.error("Worker " + name + " disconnected before it was done");
+                }
+            } catch (IOException e) {
+                if (!failed) {
+                    failed = true;
+                    logger.error("Lost worker " + name + ": " + e.getMessage());
+                }
+            } finally {
+                finished = true;
+                if (!readySent) {
+                    ready.countDown();
+                }
+                done.countDown();
+            }
+        }
+
+        void closeQuietly() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // already leaving because of an earlier error
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * One line of the coordinator/worker protocol. A worker says HELLO, gets its SLICE, prepares its user pool
+ * and reports READY; once every worker is ready the coordinator sends START. While measuring, workers send
+ * PROGRESS with their running totals and finish with DONE (or FAILED) carrying their histograms.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class LoadMessage {
+    public Type type;
+    public String worker;
+    public Slice slice;
+    public List<LoadPhaseStats.Snapshot> phases;
+    public List<LatencyRecorder.Entry> endpoints;
+    public List<LatencyRecorder.Entry> targets;
+    public String error;
+
+    public enum Type { HELLO, SLICE, READY, START, PROGRESS, DONE, FAILED }
+
+    public static LoadMessage of(Type type) {
+        var message = new LoadMessage();
+        message.type = type;
+        return message;
+    }
+
+    /** A worker's share of the run: its arrival rate and user pool, and the username counters it may use */
+    public static class Slice {
+        public int index;
+        public int workers;
+        public Config.Load load;
+        public String node;
+        public int run;
+        public long firstId;
+        public long idLimit;
+        public int progressIntervalSeconds;
+    }
+}
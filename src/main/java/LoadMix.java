@@ -0,0 +1,130 @@
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Weighted blend of load scenarios. Arrival n runs the scenario at position n of a smooth weighted
+ * round-robin table, so a mix of {@code register: 1, login: 2} interleaves as login, register, login
+ * instead of running the scenarios in blocks.
+ */
+public class LoadMix {
+    private final Map<LoadScenario, Integer> weights;
+    private final int totalWeight;
+    private final LoadScenario[] table;
+
+    public LoadMix(Map<LoadScenario, Integer> weights) {
+        this.weights = new EnumMap<>(LoadScenario.class);
+        weights.forEach((scenario, weight) -> {
+            if (weight < 0) {
+                throw new IllegalArgumentException("Weight of " + scenario + " must not be negative");
+            }
+            if (weight > 0) {
+                this.weights.put(scenario, weight);
+            }
+        });
+        if (this.weights.isEmpty()) {
+            throw new IllegalArgumentException("A load mix needs at least one scenario with a positive weight");
+        }
+        this.totalWeight = this.weights.values().stream().mapToInt(Integer::intValue).sum();
+        this.table = buildTable(this.weights);
+    }
+
+    public static LoadMix of(LoadScenario scenario) {
+        return new LoadMix(Map.of(scenario, 1));
+    }
+
+    /** The {@code load.mix} weights when any are set, otherwise {@code load.scenario} on its own */
+    public static LoadMix from(Config.Load settings) {
+        if (settings.mix == null || settings.mix.isEmpty()) {
+            return of(LoadScenario.from(settings.scenario));
+        }
+        return from(settings.mix);
+    }
+
+    public static LoadMix from(Map<String, Integer> mix) {
+        var weights = new EnumMap<LoadScenario, Integer>(LoadScenario.class);
+        mix.forEach((name, weight) -> weights.merge(LoadScenario.from(name), weight, Integer::sum));
+        return new LoadMix(weights);
+    }
+
+    /** A scenario name, or weighted names as in {@code register:1,login:2} */
+    public static LoadMix parse(String spec) {
+        if (!spec.contains(":")) {
+            return of(LoadScenario.from(spec));
+        }
+        var weights = new EnumMap<LoadScenario, Integer>(LoadScenario.class);
+        for (var part : spec.split(",")) {
+            var nameAndWeight = part.split(":", 2);
+            weights.merge(LoadScenario.from(nameAndWeight[0]), Integer.parseInt(nameAndWeight[1].trim()), Integer::sum);
+        }
+        return new LoadMix(weights);
+    }
+
+    public LoadScenario scenarioOf(long n) {
+        return table[(int) (n % table.length)];
+    }
+
+    public boolean needsUserPool() {
+        return weights.keySet().stream().anyMatch(LoadScenario::needsUserPool);
+    }
+
+    /** Scenario names and weights as they appear in the configuration, to hand the mix to workers */
+    public Map<String, Integer> toConfig() {
+        return weights.entrySet().stream()
+                .collect(Collectors.toMap(entry -> entry.getKey().name().toLowerCase(), Map.Entry::getValue));
+    }
+
+    /**
+     * The same for every way of writing the same mix: scenario names in a fixed order with their weights
+     * divided by the common divisor, e.g. {@code register:1,login:2} for {@code login:4,register:2}. Runs are
+     * filed under it in the run history.
+     */
+    public String key() {
+        if (weights.size() == 1) {
+            return weights.keySet().iterator().next().name().toLowerCase();
+        }
+        var divisor = weights.values().stream().reduce(LoadMix::gcd).orElse(1);
+        return weights.entrySet().stream()
+                .map(entry -> entry.getKey().name().toLowerCase() + ":" + entry.getValue() / divisor)
+                .collect(Collectors.joining(","));
+    }
+
+    @Override
+    public String toString() {
+        if (weights.size() == 1) {
+            return weights.keySet().iterator().next().toString();
+        }
+        return weights.entrySet().stream()
+                .map(entry -> entry.getKey() + " " + Math.round(100.0 * entry.getValue() / totalWeight) + "%")
+                .collect(Collectors.joining(", "));
+    }
+
+    private static LoadScenario[] buildTable(Map<LoadScenario, Integer> weights) {
+        var divisor = weights.values().stream().reduce(LoadMix::gcd).orElse(1);
+        var scenarios = weights.keySet().toArray(new LoadScenario[0]);
+        var reduced = new int[scenarios.length];
+        var total = 0;
+        for (int i = 0; i < scenarios.length; i++) {
+            reduced[i] = weights.get(scenarios[i]) / divisor;
+            total += reduced[i];
+        }
+        var table = new LoadScenario[total];
+        var current = new int[scenarios.length];
+        for (int slot = 0; slot < total; slot++) {
+            var best = 0;
+            for (int i = 0; i < scenarios.length; i++) {
+                current[i] += reduced[i];
+                if (current[i] > current[best]) {
+                    best = i;
+                }
+            }
+            current[best] -= total;
+            table[slot] = scenarios[best];
+        }
+        return table;
+    }
+
+    private static int gcd(int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+}
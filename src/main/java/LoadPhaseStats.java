@@ -0,0 +1,125 @@
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Outcome counters for one phase of a load run, safe to update from the client threads */
+public class LoadPhaseStats {
+    private static final int MAX_ERROR_KINDS = 50;
+    private final String name;
+    private final long durationNanos;
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final Histogram latency = new ConcurrentHistogram(3);
+    private final ConcurrentHashMap<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    public LoadPhaseStats(String name, long durationNanos) {
+        this.name = name;
+        this.durationNanos = durationNanos;
+    }
+
+    public void recordSuccess(long latencyNanos) {
+        succeeded.increment();
+        recordLatency(latencyNanos);
+    }
+
+    public void recordFailure(long latencyNanos, Throwable error) {
+        failed.increment();
+        recordLatency(latencyNanos);
+        var kind = errorKind(error);
+        var counter = errors.get(kind);
+        if (counter == null && errors.size() >= MAX_ERROR_KINDS) {
+            kind = "other";
+        }
+        errors.computeIfAbsent(kind, key -> new LongAdder()).increment();
+    }
+
+    public void recordDropped() {
+        dropped.increment();
+    }
+
+    public String name() { return name; }
+
+    public long succeeded() { return succeeded.sum(); }
+
+    public long failed() { return failed.sum(); }
+
+    public long dropped() { return dropped.sum(); }
+
+    /** Latency from intended start to completion, in microseconds */
+    public Histogram latency() {
+        return latency.copy();
+    }
+
+    /** Running totals with the encoded histogram, as a worker sends them to the coordinator */
+    public Snapshot snapshot() {
+        var snapshot = new Snapshot();
+        snapshot.name = name;
+        snapshot.durationNanos = durationNanos;
+        snapshot.succeeded = succeeded.sum();
+        snapshot.failed = failed.sum();
+        snapshot.dropped = dropped.sum();
+        snapshot.errors = errors();
+        snapshot.histogram = LatencyRecorder.encode(latency.copy());
+        return snapshot;
+    }
+
+    /** Adds another JVM's totals for the same phase, so the coordinator reports one merged phase */
+    public void add(Snapshot snapshot) {
+        succeeded.add(snapshot.succeeded);
+        failed.add(snapshot.failed);
+        dropped.add(snapshot.dropped);
+        latency.add(LatencyRecorder.decode(snapshot.histogram));
+        snapshot.errors.forEach((kind, count) -> errors.computeIfAbsent(kind, key -> new LongAdder()).add(count));
+    }
+
+    public Map<String, Long> errors() {
+        var result = new TreeMap<String, Long>();
+        errors.forEach((kind, count) -> result.put(kind, count.sum()));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        var completed = succeeded.sum() + failed.sum();
+        var seconds = durationNanos / 1e9;
+        var snapshot = latency.copy();
+        return String.format("%s: %d ok, %d failed, %d dropped, %.1f req/s, p50 %.2f ms, p99 %.2f ms, p99.9 %.2f ms, max %.2f ms, errors %s",
+                name, succeeded.sum(), failed.sum(), dropped.sum(),
+                seconds > 0 ? completed / seconds : 0.0,
+                snapshot.getValueAtPercentile(50) / 1000.0,
+                snapshot.getValueAtPercentile(99) / 1000.0,
+                snapshot.getValueAtPercentile(99.9) / 1000.0,
+                snapshot.getMaxValue() / 1000.0,
+                errors());
+    }
+
+    /** Groups failures by status and body rather than by the user or id they happened for */
+    static String errorKind(Throwable error) {
+        var cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof UnexpectedResponseError unexpected) {
+            return unexpected.statusCode() + " " + unexpected.body().trim();
+        }
+        return cause.getClass().getSimpleName();
+    }
+
+    public static class Snapshot {
+        public String name;
+        public long durationNanos;
+        public long succeeded;
+        public long failed;
+        public long dropped;
+        public Map<String, Long> errors;
+        public String histogram;
+    }
+
+    private void recordLatency(long latencyNanos) {
+        latency.recordValue(Math.max(0, TimeUnit.NANOSECONDS.toMicros(latencyNanos)));
+    }
+}
@@ -0,0 +1,207 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives one of the functional scenarios at a target arrival rate, using the same request builders and
+ * response checks as the test suites. Arrivals follow an open model: request n is due at a fixed time
+ * computed from the rate, regardless of how earlier requests are doing, and its latency is measured from
+ * that intended start. A slow service therefore shows up as latency instead of silently lowering the
+ * load (coordinated omission).
+ *
+ * Run with {@code mvn compile exec:java -Dexec.mainClass=LoadRunner [-Dexec.args=<scenario>]}.
+ */
+public class LoadRunner extends BaseClass {
+    private static final Logger logger = LoggerFactory.getLogger(LoadRunner.class);
+    private static final Config config = YamlReader.config();
+    private final Config.Load settings;
+    private final List<UserFixture> userPool = new ArrayList<>();
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final ValidationMode validationMode;
+    private final UserIdentityGenerator.IdentityFile identityFile;
+    private volatile List<LoadPhaseStats> phases = List.of();
+
+    public LoadRunner(Config.Load settings) throws IOException {
+        this.settings = settings;
+        this.validationMode = ValidationMode.from(settings.validation);
+        this.identityFile = settings.identityFile == null || settings.identityFile.isBlank()
+                ? null
+                : UserIdentityGenerator.readFile(Path.of(settings.identityFile));
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        var mix = args.length > 0 ? LoadMix.parse(args[0]) : LoadMix.from(config.load);
+        try {
+            var runner = new LoadRunner(config.load);
+            new Warmup(config.warmup, runner.validationMode).run();
+            runner.run(mix);
+            writeLatencyReport();
+            try {
+                recordRun("load-" + mix.key(), TimeUnit.SECONDS.toNanos(config.load.rampUpSeconds + config.load.steadySeconds));
+            } finally {
+                runner.cleanupUsers();
+                runner.close();
+            }
+        } finally {
+            shutdownClient();
+        }
+    }
+
+    /** Ramp-up then steady state; returns the stats of both phases */
+    public List<LoadPhaseStats> run(LoadMix mix) throws IOException, InterruptedException {
+        prepare(mix);
+        return measure(mix);
+    }
+
+    /** The measured part of {@link #run}, for callers that need to do something between preparing and measuring */
+    public List<LoadPhaseStats> measure(LoadMix mix) throws InterruptedException {
+        var ratePerNano = settings.arrivalRate / 1e9;
+        var rampUpNanos = TimeUnit.SECONDS.toNanos(settings.rampUpSeconds);
+        var steadyNanos = TimeUnit.SECONDS.toNanos(settings.steadySeconds);
+        var rampUpArrivals = (long) (ratePerNano * rampUpNanos / 2);
+        var totalArrivals = rampUpArrivals + (long) (ratePerNano * steadyNanos);
+        var rampUp = new LoadPhaseStats("ramp-up", rampUpNanos);
+        var steady = new LoadPhaseStats("steady", steadyNanos);
+        phases = List.of(rampUp, steady);
+
+        logger.info("Starting " + mix + " load: " + settings.arrivalRate + " req/s after " + settings.rampUpSeconds
+                + " s ramp-up, " + settings.steadySeconds + " s steady, " + totalArrivals + " requests, "
+                + validationMode.name().toLowerCase() + " validation");
+
+        var start = System.nanoTime();
+        for (long n = 0; n < totalArrivals; n++) {
+            if (runAborted()) {
+                logger.error("Stopping after " + n + " of " + totalArrivals + " requests, the error rate is over the abort threshold");
+                break;
+            }
+            var intendedStart = start + arrivalOffset(n, rampUpArrivals, rampUpNanos, ratePerNano);
+            long wait;
+            while ((wait = intendedStart - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            dispatch(mix.scenarioOf(n), n, intendedStart, n < rampUpArrivals ? rampUp : steady);
+        }
+        awaitOutstanding();
+
+        logger.info("Load run finished, " + rampUp);
+        logger.info("Load run finished, " + steady);
+        logger.info("Load run finished, " + connectionStats());
+        logger.info("Load run finished, " + tokenCache());
+        targetSummaries().forEach(line -> logger.info("Target " + line));
+        return List.of(rampUp, steady);
+    }
+
+    /** Closes the identity file when the run did not use all of it */
+    public void close() throws IOException {
+        if (identityFile != null) {
+            synchronized (identityFile) {
+                identityFile.close();
+            }
+        }
+    }
+
+    /** Phases of the current or last measurement, updated while it runs */
+    public List<LoadPhaseStats> phases() {
+        return phases;
+    }
+
+    @Override
+    protected ValidationMode validationMode() {
+        return validationMode;
+    }
+
+    /**
+     * Offset of arrival n from the start of the run. During ramp-up the rate grows linearly, so arrivals
+     * so far are R*t^2/(2T) and arrival n is due at sqrt(2Tn/R); afterwards they come every 1/R.
+     */
+    static long arrivalOffset(long n, long rampUpArrivals, long rampUpNanos, double ratePerNano) {
+        if (n < rampUpArrivals) {
+            return (long) Math.sqrt(2.0 * rampUpNanos * n / ratePerNano);
+        }
+        return rampUpNanos + (long) ((n - rampUpArrivals) / ratePerNano);
+    }
+
+    /** Registers the users that login and get-user runs work on, outside the measured window */
+    public void prepare(LoadMix mix) throws IOException, InterruptedException {
+        if (!mix.needsUserPool()) {
+            return;
+        }
+        logger.info("Registering " + settings.userPoolSize + " users for the " + mix + " load");
+
+        userPool.addAll(fixtures().provision(settings.userPoolSize, this::nextUser,
+                user -> registerAsync(user).thenCompose(this::accessTokenAsync)));
+        if (userPool.isEmpty()) {
+            throw new IllegalStateException("No users could be registered for the " + mix + " load");
+        }
+    }
+
+    private void dispatch(LoadScenario scenario, long n, long intendedStart, LoadPhaseStats stats) {
+        if (outstanding.incrementAndGet() > settings.maxOutstanding) {
+            outstanding.decrementAndGet();
+            stats.recordDropped();
+            return;
+        }
+
+        execute(scenario, n).whenComplete((result, error) -> {
+            var latency = System.nanoTime() - intendedStart;
+            outstanding.decrementAndGet();
+            if (error == null) {
+                stats.recordSuccess(latency);
+            } else {
+                stats.recordFailure(latency, error);
+            }
+        });
+    }
+
+    /** One request of the scenario; n picks the pool user for login and get user */
+    CompletableFuture<?> execute(LoadScenario scenario, long n) {
+        return switch (scenario) {
+            case HEALTH -> healthAsync();
+            case REGISTER -> registerAsync(nextUser());
+            case LOGIN -> loginAsync(userPool.get((int) (n % userPool.size())));
+            case GET_USER -> authenticatedGetUserAsync(userPool.get((int) (n % userPool.size())));
+        };
+    }
+
+    private CompletableFuture<?> healthAsync() {
+        if (validationMode == ValidationMode.STREAMING) {
+            return supply(this::createHealthRequest)
+                    .thenCompose(request -> sendAsync(request, StreamingValidator.health().bodyHandler()))
+                    .thenApply(response -> response.body().expectValid("Health", STATUS_CODE_SUCCESSFUL));
+        }
+        return supply(this::createHealthRequest)
+                .thenCompose(this::sendAsync)
+                .thenApply(response -> {
+                    if (response.statusCode() != STATUS_CODE_SUCCESSFUL || !HEALTHY_RESPONSE.equals(response.body())) {
+                        throw new UnexpectedResponseError("Health", STATUS_CODE_SUCCESSFUL, response.statusCode(), response.body());
+                    }
+                    return response;
+                });
+    }
+
+    /** Next user from the pre-generated identity file while it lasts, otherwise a generated one */
+    private UserFixture nextUser() {
+        if (identityFile != null) {
+            synchronized (identityFile) {
+                if (identityFile.hasNext()) {
+                    return new UserFixture(identityFile.next());
+                }
+            }
+        }
+        return newUser("Load", "Test", "User");
+    }
+
+    private void awaitOutstanding() throws InterruptedException {
+        while (outstanding.get() > 0) {
+            Thread.sleep(10);
+        }
+    }
+}
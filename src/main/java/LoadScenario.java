@@ -0,0 +1,34 @@
+import java.util.Locale;
+
+/** Functional flows the load runner can drive, named as in the load section of the configuration */
+public enum LoadScenario {
+    HEALTH,
+    REGISTER,
+    LOGIN,
+    GET_USER;
+
+    public static LoadScenario from(String name) {
+        return switch (name.trim().toLowerCase(Locale.ROOT)) {
+            case "health" -> HEALTH;
+            case "register" -> REGISTER;
+            case "login" -> LOGIN;
+            case "getuser", "get_user", "user" -> GET_USER;
+            default -> throw new IllegalArgumentException("Unknown load scenario: " + name);
+        };
+    }
+
+    /** The endpoint name this scenario's requests are recorded and budgeted under */
+    public String endpoint() {
+        return switch (this) {
+            case HEALTH -> BaseClass.HEALTH_PATH;
+            case REGISTER -> BaseClass.REGISTER_PATH;
+            case LOGIN -> BaseClass.LOGIN_PATH;
+            case GET_USER -> BaseClass.USER_PATH + "{id}";
+        };
+    }
+
+    /** Login and get user need registered users before the measured window starts */
+    public boolean needsUserPool() {
+        return this == LOGIN || this == GET_USER;
+    }
+}
@@ -0,0 +1,105 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One JVM of a distributed load run: connects to the {@link LoadCoordinator}, runs the slice it is handed
+ * with the regular {@link LoadRunner} and streams its running totals back. Start as many as the coordinator
+ * waits for, on one machine or several, with
+ * {@code mvn compile exec:java -Dexec.mainClass=LoadWorker [-Dexec.args=<host:port>]}.
+ */
+public class LoadWorker extends BaseClass {
+    private static final Logger logger = LoggerFactory.getLogger(LoadWorker.class);
+    private static final Config config = YamlReader.config();
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        var settings = config.distributed;
+        var address = args.length > 0 ? args[0] : settings.coordinatorHost + ":" + settings.coordinatorPort;
+        var separator = address.lastIndexOf(':');
+        var coordinator = new InetSocketAddress(address.substring(0, separator), Integer.parseInt(address.substring(separator + 1)));
+        var name = ProcessHandle.current().pid() + "@" + InetAddress.getLocalHost().getHostName();
+
+        try (var channel = connect(coordinator, TimeUnit.SECONDS.toNanos(settings.joinTimeoutSeconds))) {
+            var hello = LoadMessage.of(LoadMessage.Type.HELLO);
+            hello.worker = name;
+            channel.send(hello);
+            try {
+                run(channel, channel.expect(LoadMessage.Type.SLICE).slice);
+            } catch (IOException | RuntimeException e) {
+                var failed = LoadMessage.of(LoadMessage.Type.FAILED);
+                failed.error = e.toString();
+                channel.send(failed);
+                throw e;
+            }
+        } finally {
+            shutdownClient();
+        }
+    }
+
+    private static void run(LoadChannel channel, LoadMessage.Slice slice) throws IOException, InterruptedException {
+        logger.info("Running slice " + (slice.index + 1) + " of " + slice.workers + ": " + slice.load.arrivalRate
+                + " req/s, usernames " + slice.firstId + "-" + slice.idLimit + " of run " + slice.run);
+        useIdentities(UserIdentityGenerator.forRange(UserIdentityGenerator.node(slice.node), slice.run, slice.firstId, slice.idLimit));
+        var mix = LoadMix.from(slice.load);
+        var runner = new LoadRunner(slice.load);
+        runner.prepare(mix);
+        new Warmup(config.warmup, ValidationMode.from(slice.load.validation)).run();
+        channel.send(LoadMessage.of(LoadMessage.Type.READY));
+        channel.expect(LoadMessage.Type.START);
+
+        var reporter = Executors.newSingleThreadScheduledExecutor(ThreadMode.PLATFORM.threadFactory("worker-progress-"));
+        reporter.scheduleAtFixedRate(() -> {
+            try {
+                channel.send(progress(LoadMessage.Type.PROGRESS, runner.phases()));
+            } catch (IOException e) {
+                logger.warn("Could not send progress: " + e.getMessage());
+            }
+        }, slice.progressIntervalSeconds, slice.progressIntervalSeconds, TimeUnit.SECONDS);
+        List<LoadPhaseStats> phases;
+        try {
+            phases = runner.measure(mix);
+        } finally {
+            reporter.shutdownNow();
+            reporter.awaitTermination(1, TimeUnit.SECONDS);
+        }
+
+        var done = progress(LoadMessage.Type.DONE, phases);
+        done.endpoints = latencyRecorder().entries();
+        done.targets = targetLatency().entries();
+        channel.send(done);
+        runner.cleanupUsers();
+        runner.close();
+    }
+
+    private static LoadMessage progress(LoadMessage.Type type, List<LoadPhaseStats> phases) {
+        var message = LoadMessage.of(type);
+        message.phases = phases.stream().map(LoadPhaseStats::snapshot).toList();
+        return message;
+    }
+
+    /** Workers may well start before the coordinator listens, so keep trying until the join timeout */
+    private static LoadChannel connect(InetSocketAddress coordinator, long timeoutNanos) throws IOException, InterruptedException {
+        var deadline = System.nanoTime() + timeoutNanos;
+        while (true) {
+            var socket = new Socket();
+            try {
+                socket.connect(coordinator, (int) TimeUnit.SECONDS.toMillis(5));
+                return new LoadChannel(socket);
+            } catch (ConnectException e) {
+                socket.close();
+                if (System.nanoTime() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(500);
+            }
+        }
+    }
+}
@@ -1,3 +1,5 @@
+import java.util.Objects;
+
 public class LoginRequest {
     private String username;
     private String password;
@@ -7,9 +9,27 @@ public class LoginRequest {
         this.password = password;
     }
 
+    public LoginRequest(LoginRequest other) {
+        this(other.username, other.password);
+    }
+
     public String getUsername() { return username; }
     public void setUsername(String username) { this.username = username; }
 
     public String getPassword() { return password; }
     public void setPassword(String password) { this.password = password; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        LoginRequest that = (LoginRequest) o;
+        return Objects.equals(username, that.username) &&
+                Objects.equals(password, that.password);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(username, password);
+    }
 }
@@ -0,0 +1,240 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes a {@link MetricsRegistry} while a run is going on: a Prometheus text endpoint at
+ * {@code http://<bindAddress>:<port>/metrics} and a summary line on the console every interval. Separately
+ * from the summary, when the error rate of {@code abortAfterIntervals} check intervals in a row reaches
+ * {@code abortErrorRate}, it flags the run as aborted, which makes the load runner stop sending.
+ */
+public class MetricsExporter {
+    private static final Logger logger = LoggerFactory.getLogger(MetricsExporter.class);
+    private static final String PREFIX = "finbet_";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private final MetricsRegistry registry;
+    private final Config.Metrics settings;
+    private final Map<String, Long> previousRequests = new HashMap<>();
+    private final Map<String, Long> previousErrors = new HashMap<>();
+    private long previousSummary = System.nanoTime();
+    private long previousCheckedRequests;
+    private long previousCheckedErrors;
+    private int failingIntervals;
+    private volatile boolean aborted;
+    private HttpServer server;
+    private ScheduledExecutorService scheduler;
+
+    public MetricsExporter(MetricsRegistry registry, Config.Metrics settings) {
+        this.registry = registry;
+        this.settings = settings;
+    }
+
+    public synchronized MetricsExporter start() throws IOException {
+        if (settings.enabled && server == null) {
+            StubServer.enableNoDelay();
+            server = HttpServer.create(new InetSocketAddress(settings.bindAddress, settings.port), 0);
+            server.setExecutor(Executors.newSingleThreadExecutor(ThreadMode.PLATFORM.threadFactory("metrics-http-")));
+            server.createContext("/metrics", this::scrape);
+            server.start();
+            logger.info("Metrics at http://" + settings.bindAddress + ":" + server.getAddress().getPort() + "/metrics");
+        }
+        var summary = settings.consoleIntervalSeconds > 0;
+        var abortCheck = settings.abortErrorRate > 0;
+        if ((summary || abortCheck) && scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(ThreadMode.PLATFORM.threadFactory("metrics-summary-"));
+            if (summary) {
+                scheduler.scheduleAtFixedRate(this::summarize, settings.consoleIntervalSeconds,
+                        settings.consoleIntervalSeconds, TimeUnit.SECONDS);
+            }
+            if (abortCheck) {
+                scheduler.scheduleAtFixedRate(this::checkAbort, settings.abortIntervalSeconds,
+                        settings.abortIntervalSeconds, TimeUnit.SECONDS);
+            }
+        }
+        return this;
+    }
+
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /** Set once the error rate stayed above the abort threshold; the run should stop sending */
+    public boolean aborted() {
+        return aborted;
+    }
+
+    /** Port of the scrape endpoint, when it is running */
+    public synchronized int port() {
+        return server == null ? -1 : server.getAddress().getPort();
+    }
+
+    /** All metrics in the Prometheus text exposition format */
+    public String render() {
+        var out = new StringBuilder(4096);
+        type(out, "requests_in_flight", "gauge", "Requests sent and not yet answered");
+        sample(out, "requests_in_flight", "", registry.inFlight());
+        type(out, "limiter_waiting", "gauge", "Requests waiting for a maxConcurrentRequests slot");
+        sample(out, "limiter_waiting", "", registry.limiterWaiting());
+
+        type(out, "requests_total", "counter", "Requests by endpoint and status, 0 = no response");
+        registry.requests().forEach((key, count) -> sample(out, "requests_total",
+                labels("endpoint", key.endpoint(), "status", String.valueOf(key.statusCode())), count));
+
+        type(out, "request_errors_total", "counter", "Failed requests by endpoint and error message");
+        registry.errors().forEach((key, count) -> sample(out, "request_errors_total",
+                labels("endpoint", key.endpoint(), "error", key.error()), count));
+
+        type(out, "request_latency_seconds", "summary", "Request latency since the start of the run");
+        registry.latency().forEach((endpoint, histogram) -> {
+            for (var quantile : QUANTILES) {
+                sample(out, "request_latency_seconds", labels("endpoint", endpoint, "quantile", String.valueOf(quantile)),
+                        histogram.getValueAtPercentile(quantile * 100) / 1e6);
+            }
+            sample(out, "request_latency_seconds_sum", labels("endpoint", endpoint), histogram.getMean() * histogram.getTotalCount() / 1e6);
+            sample(out, "request_latency_seconds_count", labels("endpoint", endpoint), histogram.getTotalCount());
+        });
+
+        var pool = registry.clientPool();
+        if (pool != null) {
+            type(out, "client_pool_threads", "gauge", "Client executor threads by state");
+            sample(out, "client_pool_threads", labels("state", "active"), pool.getActiveCount());
+            sample(out, "client_pool_threads", labels("state", "max"), pool.getMaximumPoolSize());
+            type(out, "client_pool_queued", "gauge", "Client executor tasks waiting for a thread");
+            sample(out, "client_pool_queued", "", pool.getQueue().size());
+        }
+        return out.toString();
+    }
+
+    /** One line per interval: rate per endpoint, error rate and top errors, interval latency, saturation; null when idle */
+    synchronized String summarize() {
+        var now = System.nanoTime();
+        var seconds = Math.max(1e-9, (now - previousSummary) / 1e9);
+        previousSummary = now;
+
+        var rates = new TreeMap<String, Long>();
+        registry.requests().forEach((key, count) -> rates.merge(key.endpoint(), count, Long::sum));
+        var total = 0L;
+        var perEndpoint = new StringBuilder();
+        for (var entry : rates.entrySet()) {
+            var delta = entry.getValue() - previousRequests.getOrDefault(entry.getKey(), 0L);
+            previousRequests.put(entry.getKey(), entry.getValue());
+            total += delta;
+            perEndpoint.append(perEndpoint.length() == 0 ? "" : ", ").append(entry.getKey()).append(' ')
+                    .append(String.format("%.1f", delta / seconds));
+        }
+
+        var failed = 0L;
+        var topErrors = new TreeMap<Long, String>();
+        for (var entry : registry.errors().entrySet()) {
+            var name = entry.getKey().endpoint() + ": " + entry.getKey().error();
+            var delta = entry.getValue() - previousErrors.getOrDefault(name, 0L);
+            previousErrors.put(name, entry.getValue());
+            failed += delta;
+            if (delta > 0) {
+                topErrors.merge(-delta, name, (a, b) -> a + "; " + b);
+            }
+        }
+        var errorRate = total == 0 ? 0.0 : (double) failed / total;
+
+        var latency = new StringBuilder();
+        registry.takeIntervalLatency().forEach((endpoint, histogram) -> {
+            if (histogram.getTotalCount() > 0) {
+                latency.append(latency.length() == 0 ? "" : ", ").append(String.format("%s p50 %.1f p99 %.1f ms", endpoint,
+                        histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(99) / 1000.0));
+            }
+        });
+
+        if (total == 0 && registry.inFlight() == 0) {
+            return null;
+        }
+        var pool = registry.clientPool();
+        var line = String.format("%.1f req/s (%s), %d in flight, %d waiting, errors %.1f%%%s, latency: %s%s",
+                total / seconds, perEndpoint, registry.inFlight(), registry.limiterWaiting(), errorRate * 100,
+                topErrors.isEmpty() ? "" : " " + topErrors.values().stream().limit(3).toList(),
+                latency.length() == 0 ? "-" : latency,
+                pool == null ? "" : ", client pool " + pool.getActiveCount() + "/" + pool.getMaximumPoolSize()
+                        + " busy, " + pool.getQueue().size() + " queued");
+        logger.info("Metrics: " + line);
+        return line;
+    }
+
+    /** Compares the requests and errors since the previous check with the abort threshold */
+    synchronized void checkAbort() {
+        var requests = registry.requests().values().stream().mapToLong(Long::longValue).sum();
+        var errors = registry.errors().values().stream().mapToLong(Long::longValue).sum();
+        var total = requests - previousCheckedRequests;
+        var failed = errors - previousCheckedErrors;
+        previousCheckedRequests = requests;
+        previousCheckedErrors = errors;
+        if (aborted) {
+            return;
+        }
+        var errorRate = total == 0 ? 0.0 : (double) failed / total;
+        if (total >= settings.abortMinRequests && errorRate >= settings.abortErrorRate) {
+            failingIntervals++;
+        } else {
+            failingIntervals = 0;
+        }
+        if (failingIntervals >= settings.abortAfterIntervals) {
+            aborted = true;
+            logger.error(String.format("Aborting the run: error rate %.1f%% for %d intervals in a row, threshold %.1f%%",
+                    errorRate * 100, failingIntervals, settings.abortErrorRate * 100));
+        }
+    }
+
+    private void scrape(HttpExchange exchange) throws IOException {
+        try {
+            var body = render().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void type(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(PREFIX).append(name).append(labels).append(' ');
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    private static String labels(String... namesAndValues) {
+        var out = new StringBuilder("{");
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            out.append(i == 0 ? "" : ",").append(namesAndValues[i]).append("=\"").append(escape(namesAndValues[i + 1])).append('"');
+        }
+        return out.append('}').toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,148 @@
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Live counters of the running client, read by the Prometheus endpoint and the console summary while a run
+ * is going on. The request path only touches LongAdders in concurrent maps and wait-free HdrHistogram
+ * recorders; everything else (rates, ratios, percentiles, pool saturation) is computed by the reader.
+ * Counters and cumulative latency only ever grow, as Prometheus expects, and leave out the warm-up like the
+ * {@link LatencyRecorder} that reports use.
+ */
+public class MetricsRegistry {
+    private static final int MAX_ERROR_KINDS = 50;
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private final LongAdder inFlight = new LongAdder();
+    private final ConcurrentHashMap<RequestKey, LongAdder> requests = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<ErrorKey, LongAdder> errors = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Recorder> intervalLatency = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Histogram> latency = new ConcurrentHashMap<>();
+    private volatile ThreadPoolExecutor clientPool;
+    private volatile IntSupplier limiterWaiting = () -> 0;
+
+    public void requestStarted() {
+        inFlight.increment();
+    }
+
+    /** A finished request; {@code error} is null for successes, otherwise a short description of what failed */
+    public void requestFinished(String endpoint, int statusCode, long latencyNanos, String error) {
+        inFlight.decrement();
+        counter(requests, new RequestKey(endpoint, statusCode)).increment();
+        var recorder = intervalLatency.get(endpoint);
+        if (recorder == null) {
+            recorder = intervalLatency.computeIfAbsent(endpoint, key -> new Recorder(SIGNIFICANT_DIGITS));
+        }
+        var micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+        recorder.recordValue(micros);
+        var cumulative = latency.get(endpoint);
+        if (cumulative == null) {
+            cumulative = latency.computeIfAbsent(endpoint, key -> new ConcurrentHistogram(SIGNIFICANT_DIGITS));
+        }
+        cumulative.recordValue(micros);
+        if (error != null) {
+            var key = new ErrorKey(endpoint, error);
+            if (!errors.containsKey(key) && errors.size() >= MAX_ERROR_KINDS) {
+                key = new ErrorKey(endpoint, "other");
+            }
+            counter(errors, key).increment();
+        }
+    }
+
+    /** A finished request that is not counted, such as warm-up traffic */
+    public void requestDiscarded() {
+        inFlight.decrement();
+    }
+
+    /** Plain get first: computeIfAbsent may lock the bin even when the key is present */
+    private static <K> LongAdder counter(ConcurrentHashMap<K, LongAdder> counters, K key) {
+        var counter = counters.get(key);
+        return counter != null ? counter : counters.computeIfAbsent(key, ignored -> new LongAdder());
+    }
+
+    /** The client executor, when it is a thread pool whose saturation can be reported */
+    public void watchClientPool(Object executor) {
+        clientPool = executor instanceof ThreadPoolExecutor pool ? pool : null;
+    }
+
+    public void watchLimiter(RequestLimiter limiter) {
+        limiterWaiting = limiter::waiting;
+    }
+
+    public long inFlight() { return inFlight.sum(); }
+
+    public int limiterWaiting() { return limiterWaiting.getAsInt(); }
+
+    public ThreadPoolExecutor clientPool() { return clientPool; }
+
+    /** Requests so far per endpoint and status */
+    public Map<RequestKey, Long> requests() {
+        var result = new TreeMap<RequestKey, Long>();
+        requests.forEach((key, count) -> result.put(key, count.sum()));
+        return result;
+    }
+
+    /** Failures so far per endpoint and error message */
+    public Map<ErrorKey, Long> errors() {
+        var result = new TreeMap<ErrorKey, Long>();
+        errors.forEach((key, count) -> result.put(key, count.sum()));
+        return result;
+    }
+
+    /** Latency per endpoint since the previous call; only the console summary should take these */
+    public Map<String, Histogram> takeIntervalLatency() {
+        var result = new TreeMap<String, Histogram>();
+        intervalLatency.forEach((endpoint, recorder) -> result.put(endpoint, recorder.getIntervalHistogram()));
+        return result;
+    }
+
+    /** Cumulative latency per endpoint, all status codes merged; never reset */
+    public Map<String, Histogram> latency() {
+        var result = new TreeMap<String, Histogram>();
+        latency.forEach((endpoint, histogram) -> result.put(endpoint, histogram.copy()));
+        return result;
+    }
+
+    /** The error message of a JSON error body such as {@code {"error":"Invalid token"}}, otherwise the body itself */
+    public static String errorOf(int statusCode, Object body) {
+        if (body instanceof StreamingValidator.Result result) {
+            if (result.value("error") != null) {
+                return result.value("error");
+            }
+            body = result.rawBody();
+        }
+        if (body instanceof String text) {
+            var trimmed = text.trim();
+            if (trimmed.startsWith("{\"error\":\"") && trimmed.endsWith("\"}")) {
+                return trimmed.substring(10, trimmed.length() - 2);
+            }
+            if (!trimmed.isEmpty()) {
+                return trimmed.length() <= 100 ? trimmed : trimmed.substring(0, 100);
+            }
+        }
+        return "HTTP " + statusCode;
+    }
+
+    public record RequestKey(String endpoint, int statusCode) implements Comparable<RequestKey> {
+        @Override
+        public int compareTo(RequestKey other) {
+            var byEndpoint = endpoint.compareTo(other.endpoint);
+            return byEndpoint != 0 ? byEndpoint : Integer.compare(statusCode, other.statusCode);
+        }
+    }
+
+    public record ErrorKey(String endpoint, String error) implements Comparable<ErrorKey> {
+        @Override
+        public int compareTo(ErrorKey other) {
+            var byEndpoint = endpoint.compareTo(other.endpoint);
+            return byEndpoint != 0 ? byEndpoint : error.compareTo(other.error);
+        }
+    }
+}
@@ -0,0 +1,968 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLSession;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.UnresolvedAddressException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HTTP/1.1 over non-blocking socket channels, for load runs that need more requests per second than the JDK
+ * client gets out of one JVM. A few event loop threads ({@code client.nioSelectors}) each own a selector and
+ * the connections opened on it. Every connection reads and writes through a pair of direct buffers taken
+ * from its loop's free list and given back when it closes. Connections are kept alive in a pool per host
+ * and port; with {@code client.pipelining} above 1 a busy connection takes up to that many requests before
+ * another one is opened, and their responses come back in order. Complete responses are handed to the
+ * request's body handler on a separate executor, so the event loops only move bytes.
+ *
+ * Plain http only: no TLS, HTTP/2, proxies or redirects. A request still waiting for its connection when
+ * that connection closes is sent again on another one. A request already written fails with it, except a GET
+ * or HEAD on a kept-alive connection the server closed before any of its response came back: like the JDK
+ * client, that one is sent once more on a new connection, since the server most likely dropped the
+ * connection as idle just as the request went out.
+ */
+public class NioTransport implements Transport {
+    private static final Logger logger = LoggerFactory.getLogger(NioTransport.class);
+    private static final long SELECT_MILLIS = 20;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final int MAX_FREE_BUFFERS = 64;
+    private static final byte[] NO_CONTENT = new byte[0];
+    private final Config.Client settings;
+    private final int pipelining;
+    private final int bufferBytes;
+    private final long keepAliveNanos;
+    private final EventLoop[] loops;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private final ConcurrentHashMap<String, Pool> pools = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+    private final LongAdder opened = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private volatile boolean closed;
+
+    public NioTransport(Config.Client settings, ThreadMode threadMode) {
+        this.settings = settings;
+        this.pipelining = Math.max(1, settings.pipelining);
+        this.bufferBytes = settings.nioBufferKb * 1024;
+        this.keepAliveNanos = TimeUnit.SECONDS.toNanos(settings.keepAliveTimeoutSeconds);
+        var processors = Runtime.getRuntime().availableProcessors();
+        var threads = settings.executorThreads > 0 ? settings.executorThreads : processors;
+        this.executor = threadMode.newExecutor("nio-http-", threads);
+        var threadFactory = ThreadMode.PLATFORM.threadFactory("nio-loop-");
+        this.loops = new EventLoop[settings.nioSelectors > 0 ? settings.nioSelectors : Math.max(1, processors / 2)];
+        try {
+            for (int i = 0; i < loops.length; i++) {
+                loops[i] = new EventLoop();
+            }
+        } catch (IOException e) {
+            close();
+            throw new UncheckedIOException("Could not open a selector", e);
+        }
+        for (var loop : loops) {
+            threadFactory.newThread(loop).start();
+        }
+        if (settings.http2) {
+            logger.warn("The nio transport speaks HTTP/1.1 only, client.http2 is ignored");
+        }
+        logger.info("Creating nio HTTP transport, " + loops.length + " event loops, pipelining: " + pipelining
+                + ", buffers: " + settings.nioBufferKb + " KB, executor: "
+                + (threadMode == ThreadMode.VIRTUAL ? "virtual threads" : threads + " threads")
+                + ", connection reuse: " + settings.connectionReuse);
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) {
+        var uri = request.uri();
+        if (!"http".equalsIgnoreCase(uri.getScheme())) {
+            return CompletableFuture.failedFuture(new IOException("The nio transport speaks plain http only: " + uri));
+        }
+        var timeout = request.timeout().map(duration -> duration.toNanos()).orElse(TimeUnit.MILLISECONDS.toNanos(settings.requestTimeoutMs));
+        var exchange = new Exchange<>(request, bodyHandler, System.nanoTime() + timeout);
+        bodyOf(request).whenComplete((body, error) -> {
+            if (error != null) {
+                exchange.fail(error);
+            } else {
+                exchange.body = body;
+                submit(exchange);
+            }
+        });
+        return exchange.response;
+    }
+
+    @Override
+    public Executor executor() {
+        return executor;
+    }
+
+    @Override
+    public long connectionsOpened() {
+        return opened.sum();
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (var loop : loops) {
+            if (loop != null) {
+                loop.selector.wakeup();
+            }
+        }
+        executor.shutdown();
+        logger.info("Closing nio HTTP transport after " + requests.sum() + " requests over " + opened.sum() + " connections");
+    }
+
+    private void submit(Exchange<?> exchange) {
+        if (closed) {
+            exchange.fail(new IOException("The nio transport is closed"));
+            return;
+        }
+        var uri = exchange.request.uri();
+        var port = uri.getPort() == -1 ? 80 : uri.getPort();
+        var connection = pools.computeIfAbsent(uri.getHost() + ":" + port, key -> new Pool(uri.getHost(), port)).assign(exchange.resent);
+        connection.loop.execute(() -> connection.enqueue(exchange));
+    }
+
+    /** Sends the exchange on another connection, unless it has used up its attempts or its time */
+    private void retry(Exchange<?> exchange, IOException error) {
+        if (closed || ++exchange.attempts >= MAX_ATTEMPTS || System.nanoTime() > exchange.deadline) {
+            exchange.fail(error);
+        } else {
+            submit(exchange);
+        }
+    }
+
+    /** Runs response handling off the event loops; inline once the executor is shut down */
+    private void dispatch(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+        }
+    }
+
+    /** The request body; the byte array and string publishers deliver it as soon as it is asked for */
+    private static CompletableFuture<byte[]> bodyOf(HttpRequest request) {
+        var publisher = request.bodyPublisher().orElse(null);
+        if (publisher == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        var body = new CompletableFuture<byte[]>();
+        publisher.subscribe(new Flow.Subscriber<>() {
+            private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(32, (int) publisher.contentLength()));
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ByteBuffer item) {
+                if (item.hasArray()) {
+                    bytes.write(item.array(), item.arrayOffset() + item.position(), item.remaining());
+                } else {
+                    var chunk = new byte[item.remaining()];
+                    item.get(chunk);
+                    bytes.writeBytes(chunk);
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                body.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                body.complete(bytes.toByteArray());
+            }
+        });
+        return body;
+    }
+
+    private static void putAscii(ByteBuffer buffer, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            buffer.put((byte) text.charAt(i));
+        }
+    }
+
+    /** One request and where its response goes */
+    private final class Exchange<T> {
+        final HttpRequest request;
+        final HttpResponse.BodyHandler<T> bodyHandler;
+        final CompletableFuture<HttpResponse<T>> response = new CompletableFuture<>();
+        final long deadline;
+        final boolean closeAfter;
+        final boolean noBody;
+        final boolean idempotent;
+        byte[] body;
+        int attempts;
+        boolean resent;
+
+        Exchange(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler, long deadline) {
+            this.request = request;
+            this.bodyHandler = bodyHandler;
+            this.deadline = deadline;
+            this.closeAfter = request.headers().firstValue("Connection").map("close"::equalsIgnoreCase).orElse(false);
+            this.noBody = "HEAD".equalsIgnoreCase(request.method());
+            this.idempotent = noBody || "GET".equalsIgnoreCase(request.method());
+        }
+
+        /** Request line, headers and body, or BufferOverflowException when they do not fit */
+        void writeTo(ByteBuffer buffer) {
+            var uri = request.uri();
+            var path = uri.getRawPath();
+            putAscii(buffer, request.method());
+            buffer.put((byte) ' ');
+            putAscii(buffer, path == null || path.isEmpty() ? "/" : path);
+            if (uri.getRawQuery() != null) {
+                buffer.put((byte) '?');
+                putAscii(buffer, uri.getRawQuery());
+            }
+            putAscii(buffer, " HTTP/1.1\r\nHost: ");
+            putAscii(buffer, uri.getHost());
+            if (uri.getPort() != -1) {
+                buffer.put((byte) ':');
+                putAscii(buffer, Integer.toString(uri.getPort()));
+            }
+            putAscii(buffer, "\r\n");
+            for (var header : request.headers().map().entrySet()) {
+                if (header.getKey().equalsIgnoreCase("Host") || header.getKey().equalsIgnoreCase("Content-Length")) {
+                    continue;
+                }
+                for (var value : header.getValue()) {
+                    putAscii(buffer, header.getKey());
+                    putAscii(buffer, ": ");
+                    putAscii(buffer, value);
+                    putAscii(buffer, "\r\n");
+                }
+            }
+            if (body != null) {
+                putAscii(buffer, "Content-Length: ");
+                putAscii(buffer, Integer.toString(body.length));
+                putAscii(buffer, "\r\n");
+            }
+            putAscii(buffer, "\r\n");
+            if (body != null) {
+                buffer.put(body);
+            }
+        }
+
+        void complete(int status, HttpHeaders headers, byte[] content) {
+            requests.increment();
+            dispatch(() -> {
+                try {
+                    var subscriber = bodyHandler.apply(new Info(status, headers, HttpClient.Version.HTTP_1_1));
+                    subscriber.onSubscribe(new BodySubscription(subscriber, content));
+                    subscriber.getBody().whenComplete((value, error) -> {
+                        if (error != null) {
+                            response.completeExceptionally(error);
+                        } else {
+                            response.complete(new Response<>(status, request, headers, value));
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    response.completeExceptionally(e);
+                }
+            });
+        }
+
+        void fail(Throwable error) {
+            dispatch(() -> response.completeExceptionally(error));
+        }
+    }
+
+    /** Connections to one host and port */
+    private final class Pool {
+        final String host;
+        final int port;
+        private final List<Connection> connections = new ArrayList<>();
+
+        Pool(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+
+        /** An idle connection, else the least busy one below the pipelining depth, else (or when {@code fresh}) a new one */
+        synchronized Connection assign(boolean fresh) {
+            Connection best = null;
+            for (var connection : connections) {
+                if (!fresh && connection.assigned < pipelining && (best == null || connection.assigned < best.assigned)) {
+                    best = connection;
+                }
+            }
+            if (best == null) {
+                best = new Connection(this, loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)]);
+                connections.add(best);
+                var connection = best;
+                connection.loop.execute(connection::open);
+            }
+            best.assigned++;
+            return best;
+        }
+
+        /** Called when a response is complete; false when the connection should close because enough others are idle */
+        synchronized boolean release(Connection connection) {
+            connection.assigned--;
+            connection.idleSince = System.nanoTime();
+            if (connection.assigned > 0 || settings.connectionPoolSize <= 0) {
+                return true;
+            }
+            var idle = 0;
+            for (var other : connections) {
+                if (other.assigned == 0) {
+                    idle++;
+                }
+            }
+            if (idle > settings.connectionPoolSize) {
+                connections.remove(connection);
+                return false;
+            }
+            return true;
+        }
+
+        /** Takes the connection out of the pool when it has been idle longer than the keep-alive timeout */
+        synchronized boolean expire(Connection connection, long now) {
+            if (connection.assigned == 0 && now - connection.idleSince > keepAliveNanos) {
+                connections.remove(connection);
+                return true;
+            }
+            return false;
+        }
+
+        synchronized void remove(Connection connection) {
+            connections.remove(connection);
+        }
+    }
+
+    /** A selector thread and the connections registered with it */
+    private final class EventLoop implements Runnable {
+        final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean wakeupPending = new AtomicBoolean();
+        private final List<Connection> connections = new ArrayList<>();
+        private final ArrayDeque<ByteBuffer> freeBuffers = new ArrayDeque<>();
+
+        EventLoop() throws IOException {
+            selector = Selector.open();
+        }
+
+        /** Runs the task on this loop's thread; wakes the selector only when nothing else has yet */
+        void execute(Runnable task) {
+            tasks.add(task);
+            if (!wakeupPending.getAndSet(true)) {
+                selector.wakeup();
+            }
+        }
+
+        @Override
+        public void run() {
+            var lastSweep = System.nanoTime();
+            while (!closed) {
+                wakeupPending.set(false);
+                runTasks();
+                try {
+                    selector.select(SELECT_MILLIS);
+                } catch (IOException e) {
+                    logger.error("Selector failed: " + e.getMessage());
+                    break;
+                }
+                var selected = selector.selectedKeys();
+                for (var key : selected) {
+                    ((Connection) key.attachment()).ready(key);
+                }
+                selected.clear();
+                var now = System.nanoTime();
+                if (now - lastSweep >= TimeUnit.MILLISECONDS.toNanos(SELECT_MILLIS)) {
+                    lastSweep = now;
+                    for (var connection : new ArrayList<>(connections)) {
+                        connection.sweep(now);
+                    }
+                }
+            }
+            for (var connection : new ArrayList<>(connections)) {
+                connection.close(new IOException("The nio transport is closed"));
+            }
+            runTasks();
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // nothing left to release
+            }
+        }
+
+        private void runTasks() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+
+        ByteBuffer takeBuffer() {
+            var buffer = freeBuffers.poll();
+            return buffer != null ? buffer.clear() : ByteBuffer.allocateDirect(bufferBytes);
+        }
+
+        void giveBack(ByteBuffer buffer) {
+            if (buffer != null && freeBuffers.size() < MAX_FREE_BUFFERS) {
+                freeBuffers.add(buffer);
+            }
+        }
+    }
+
+    /**
+     * One socket. Everything but {@code assigned} and {@code idleSince}, which the pool guards, is touched by
+     * its event loop only. Requests move from {@code unsent} into the write buffer and then wait in
+     * {@code awaiting} for their responses, which the parser reads in order.
+     */
+    private final class Connection {
+        private static final int STATUS = 0, HEADERS = 1, BODY = 2, CHUNK_SIZE = 3, CHUNK_DATA = 4, CHUNK_END = 5,
+                TRAILERS = 6, UNTIL_CLOSE = 7;
+        final Pool pool;
+        final EventLoop loop;
+        int assigned;
+        long idleSince = System.nanoTime();
+        private int served;
+        private boolean closedByPeer;
+        private final ArrayDeque<Exchange<?>> unsent = new ArrayDeque<>();
+        private final ArrayDeque<Exchange<?>> awaiting = new ArrayDeque<>();
+        private SocketChannel channel;
+        private SelectionKey key;
+        private ByteBuffer readBuffer;
+        private ByteBuffer writeBuffer;
+        private ByteBuffer oversized;
+        private long connectDeadline;
+        private boolean connected;
+        private boolean closed;
+        private int state = STATUS;
+        private byte[] line = new byte[256];
+        private int lineLength;
+        private int status;
+        private boolean http10;
+        private boolean responding;
+        private Map<String, List<String>> headers;
+        private byte[] content = NO_CONTENT;
+        private int contentLength;
+        private long remaining;
+
+        Connection(Pool pool, EventLoop loop) {
+            this.pool = pool;
+            this.loop = loop;
+        }
+
+        void open() {
+            loop.connections.add(this);
+            readBuffer = loop.takeBuffer();
+            writeBuffer = loop.takeBuffer();
+            connectDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(settings.connectTimeoutMs);
+            try {
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                opened.increment();
+                if (channel.connect(new InetSocketAddress(pool.host, pool.port))) {
+                    key = channel.register(loop.selector, SelectionKey.OP_READ, this);
+                    connected();
+                } else {
+                    key = channel.register(loop.selector, SelectionKey.OP_CONNECT, this);
+                }
+            } catch (IOException e) {
+                close(e);
+            } catch (UnresolvedAddressException e) {
+                close(new UnknownHostException(pool.host));
+            }
+        }
+
+        void enqueue(Exchange<?> exchange) {
+            if (closed) {
+                retry(exchange, new IOException("Connection to " + pool.host + ":" + pool.port + " closed"));
+                return;
+            }
+            unsent.add(exchange);
+            if (connected) {
+                try {
+                    write();
+                } catch (IOException e) {
+                    close(e);
+                }
+            }
+        }
+
+        void ready(SelectionKey key) {
+            try {
+                if (key.isValid() && key.isConnectable() && channel.finishConnect()) {
+                    connected();
+                }
+                if (key.isValid() && key.isWritable()) {
+                    write();
+                }
+                if (key.isValid() && key.isReadable()) {
+                    read();
+                }
+            } catch (IOException e) {
+                close(e);
+            }
+        }
+
+        private void connected() throws IOException {
+            connected = true;
+            key.interestOps(SelectionKey.OP_READ);
+            write();
+        }
+
+        /** Moves requests into the write buffer while they fit and writes as much as the socket takes */
+        private void write() throws IOException {
+            try {
+                writeRequests();
+            } catch (IOException e) {
+                closedByPeer = true;
+                throw e;
+            }
+        }
+
+        private void writeRequests() throws IOException {
+            while (true) {
+                while (oversized == null && !unsent.isEmpty() && encode(unsent.peek())) {
+                    awaiting.add(unsent.poll());
+                }
+                if (writeBuffer.position() > 0) {
+                    writeBuffer.flip();
+                    channel.write(writeBuffer);
+                    writeBuffer.compact();
+                    if (writeBuffer.position() > 0) {
+                        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                }
+                if (oversized != null) {
+                    channel.write(oversized);
+                    if (oversized.hasRemaining()) {
+                        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                    oversized = null;
+                }
+                if (unsent.isEmpty()) {
+                    key.interestOps(SelectionKey.OP_READ);
+                    return;
+                }
+            }
+        }
+
+        /** False when the request has to wait for the write buffer to drain; one that never fits gets its own buffer */
+        private boolean encode(Exchange<?> exchange) {
+            var start = writeBuffer.position();
+            try {
+                exchange.writeTo(writeBuffer);
+                return true;
+            } catch (BufferOverflowException e) {
+                writeBuffer.position(start);
+                if (start > 0) {
+                    return false;
+                }
+            }
+            var capacity = bufferBytes * 2 + (exchange.body == null ? 0 : exchange.body.length);
+            while (true) {
+                var buffer = ByteBuffer.allocate(capacity);
+                try {
+                    exchange.writeTo(buffer);
+                    oversized = buffer.flip();
+                    return true;
+                } catch (BufferOverflowException e) {
+                    capacity *= 2;
+                }
+            }
+        }
+
+        private void read() throws IOException {
+            while (true) {
+                int read;
+                try {
+                    read = channel.read(readBuffer);
+                } catch (IOException e) {
+                    closedByPeer = true;
+                    throw e;
+                }
+                if (read < 0) {
+                    endOfStream();
+                    return;
+                }
+                if (read == 0) {
+                    return;
+                }
+                readBuffer.flip();
+                parse(readBuffer);
+                if (closed) {
+                    return;
+                }
+                readBuffer.clear();
+                if (read < readBuffer.capacity()) {
+                    return;
+                }
+            }
+        }
+
+        private void endOfStream() {
+            if (state == UNTIL_CLOSE) {
+                complete(false);
+            }
+            closedByPeer = true;
+            close(awaiting.isEmpty() ? null : new IOException("Connection closed by " + pool.host + ":" + pool.port
+                    + " before the response was complete"));
+        }
+
+        /** Consumes all of {@code in}: partial lines are kept in {@code line}, bodies in {@code content} */
+        private void parse(ByteBuffer in) throws IOException {
+            while (in.hasRemaining() && !closed) {
+                switch (state) {
+                    case BODY, CHUNK_DATA -> {
+                        var n = (int) Math.min(remaining, in.remaining());
+                        in.get(content, contentLength, n);
+                        contentLength += n;
+                        remaining -= n;
+                        if (remaining == 0) {
+                            if (state == BODY) {
+                                complete(true);
+                            } else {
+                                state = CHUNK_END;
+                            }
+                        }
+                    }
+                    case UNTIL_CLOSE -> {
+                        ensureContent(contentLength + in.remaining());
+                        var n = in.remaining();
+                        in.get(content, contentLength, n);
+                        contentLength += n;
+                    }
+                    default -> {
+                        if (readLine(in)) {
+                            line();
+                            lineLength = 0;
+                        }
+                    }
+                }
+            }
+        }
+
+        /** True once a whole line is in {@code line}, without its CR LF */
+        private boolean readLine(ByteBuffer in) {
+            while (in.hasRemaining()) {
+                var b = in.get();
+                if (b == '\n') {
+                    if (lineLength > 0 && line[lineLength - 1] == '\r') {
+                        lineLength--;
+                    }
+                    return true;
+                }
+                if (lineLength == line.length) {
+                    line = Arrays.copyOf(line, line.length * 2);
+                }
+                line[lineLength++] = b;
+            }
+            return false;
+        }
+
+        private void line() throws IOException {
+            switch (state) {
+                case STATUS -> {
+                    if (lineLength == 0) {
+                        return;
+                    }
+                    if (awaiting.isEmpty()) {
+                        throw new IOException("Response from " + pool.host + ":" + pool.port + " without a request");
+                    }
+                    if (lineLength < 12 || line[0] != 'H' || line[8] != ' ') {
+                        throw new IOException("Malformed status line: " + text(0, lineLength));
+                    }
+                    http10 = line[7] == '0';
+                    responding = true;
+                    status = (line[9] - '0') * 100 + (line[10] - '0') * 10 + (line[11] - '0');
+                    headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+                    state = HEADERS;
+                }
+                case HEADERS -> {
+                    if (lineLength == 0) {
+                        headersDone();
+                        return;
+                    }
+                    var colon = 0;
+                    while (colon < lineLength && line[colon] != ':') {
+                        colon++;
+                    }
+                    if (colon == lineLength) {
+                        throw new IOException("Malformed header: " + text(0, lineLength));
+                    }
+                    headers.computeIfAbsent(text(0, colon).trim(), name -> new ArrayList<>(1))
+                            .add(text(colon + 1, lineLength - colon - 1).trim());
+                }
+                case CHUNK_SIZE -> {
+                    var size = 0L;
+                    for (int i = 0; i < lineLength && line[i] != ';' && line[i] != ' '; i++) {
+                        var digit = Character.digit(line[i], 16);
+                        if (digit < 0 || size > Integer.MAX_VALUE) {
+                            throw new IOException("Malformed chunk size: " + text(0, lineLength));
+                        }
+                        size = size * 16 + digit;
+                    }
+                    if (size == 0) {
+                        state = TRAILERS;
+                    } else {
+                        ensureContent(contentLength + size);
+                        remaining = size;
+                        state = CHUNK_DATA;
+                    }
+                }
+                case CHUNK_END -> state = CHUNK_SIZE;
+                case TRAILERS -> {
+                    if (lineLength == 0) {
+                        complete(true);
+                    }
+                }
+                default -> throw new IllegalStateException("No line expected in state " + state);
+            }
+        }
+
+        private void headersDone() throws IOException {
+            if (status / 100 == 1) {
+                state = STATUS;
+                return;
+            }
+            content = NO_CONTENT;
+            contentLength = 0;
+            if (awaiting.peek().noBody || status == 204 || status == 304) {
+                complete(true);
+                return;
+            }
+            var transferEncoding = header("Transfer-Encoding");
+            if (transferEncoding != null && transferEncoding.toLowerCase().contains("chunked")) {
+                state = CHUNK_SIZE;
+                return;
+            }
+            var length = header("Content-Length");
+            if (length == null) {
+                state = UNTIL_CLOSE;
+                return;
+            }
+            long size;
+            try {
+                size = Long.parseLong(length);
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed Content-Length: " + length);
+            }
+            if (size < 0 || size > Integer.MAX_VALUE - 8) {
+                throw new IOException("Unsupported Content-Length: " + length);
+            }
+            if (size == 0) {
+                complete(true);
+                return;
+            }
+            content = new byte[(int) size];
+            remaining = size;
+            state = BODY;
+        }
+
+        /** Hands the response to its exchange and puts the connection back in the pool or closes it */
+        private void complete(boolean framed) {
+            var exchange = awaiting.poll();
+            var body = contentLength == content.length ? content : Arrays.copyOf(content, contentLength);
+            var connectionHeader = header("Connection");
+            var keepAlive = framed && !exchange.closeAfter && settings.connectionReuse
+                    && (http10 ? "keep-alive".equalsIgnoreCase(connectionHeader) : !"close".equalsIgnoreCase(connectionHeader));
+            exchange.complete(status, HttpHeaders.of(headers, (name, value) -> true), body);
+            served++;
+            responding = false;
+            state = STATUS;
+            headers = null;
+            content = NO_CONTENT;
+            contentLength = 0;
+            if (!keepAlive) {
+                close(new IOException("Connection to " + pool.host + ":" + pool.port + " closed after a response"));
+            } else if (!pool.release(this)) {
+                close(null);
+            }
+        }
+
+        /** Times out the oldest request and closes connections that took too long to connect or sat idle too long */
+        void sweep(long now) {
+            if (!connected && now > connectDeadline) {
+                close(new HttpConnectTimeoutException("HTTP connect timed out"));
+                return;
+            }
+            var queue = awaiting.isEmpty() ? unsent : awaiting;
+            var oldest = queue.peek();
+            if (oldest != null && now > oldest.deadline) {
+                queue.poll();
+                oldest.fail(new HttpTimeoutException("request timed out"));
+                close(new IOException("Connection to " + pool.host + ":" + pool.port + " dropped after a request on it timed out"));
+                return;
+            }
+            if (awaiting.isEmpty() && unsent.isEmpty() && pool.expire(this, now)) {
+                close(null);
+            }
+        }
+
+        /** Fails the requests already written, sends the others (and {@link #resendable} ones) elsewhere and gives the buffers back */
+        void close(IOException error) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            pool.remove(this);
+            loop.connections.remove(this);
+            if (key != null) {
+                key.cancel();
+            }
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // the connection is gone either way
+                }
+            }
+            var failure = error != null ? error : new IOException("Connection to " + pool.host + ":" + pool.port + " closed");
+            var first = true;
+            for (var exchange : awaiting) {
+                if (resendable(exchange, first)) {
+                    exchange.resent = true;
+                    retry(exchange, failure);
+                } else {
+                    exchange.fail(failure);
+                }
+                first = false;
+            }
+            awaiting.clear();
+            var waiting = new ArrayList<>(unsent);
+            unsent.clear();
+            waiting.forEach(exchange -> retry(exchange, failure));
+            loop.giveBack(readBuffer);
+            loop.giveBack(writeBuffer);
+            readBuffer = null;
+            writeBuffer = null;
+        }
+
+        /**
+         * A written GET or HEAD gets one more try when the server closed a connection that had already served
+         * responses, before any of this request's response arrived
+         */
+        private boolean resendable(Exchange<?> exchange, boolean first) {
+            return closedByPeer && served > 0 && exchange.idempotent && !exchange.resent
+                    && !(first && (responding || lineLength > 0));
+        }
+
+        private void ensureContent(long size) throws IOException {
+            if (size > Integer.MAX_VALUE - 8) {
+                throw new IOException("Response body too large");
+            }
+            if (content.length < size) {
+                content = Arrays.copyOf(content, (int) Math.max(size, Math.min(Integer.MAX_VALUE - 8L, content.length * 2L)));
+            }
+        }
+
+        private String header(String name) {
+            var values = headers.get(name);
+            return values == null || values.isEmpty() ? null : values.get(0);
+        }
+
+        private String text(int offset, int length) {
+            return new String(line, offset, length, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    /** Feeds a complete body to a body subscriber as one buffer */
+    private static final class BodySubscription implements Flow.Subscription {
+        private final HttpResponse.BodySubscriber<?> subscriber;
+        private final byte[] content;
+        private boolean delivered;
+        private boolean cancelled;
+
+        BodySubscription(HttpResponse.BodySubscriber<?> subscriber, byte[] content) {
+            this.subscriber = subscriber;
+            this.content = content;
+        }
+
+        @Override
+        public void request(long n) {
+            if (delivered || cancelled) {
+                return;
+            }
+            delivered = true;
+            if (n <= 0) {
+                subscriber.onError(new IllegalArgumentException("Non-positive request: " + n));
+                return;
+            }
+            if (content.length > 0) {
+                subscriber.onNext(List.of(ByteBuffer.wrap(content)));
+            }
+            if (!cancelled) {
+                subscriber.onComplete();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    private record Info(int statusCode, HttpHeaders headers, HttpClient.Version version) implements HttpResponse.ResponseInfo {
+    }
+
+    private record Response<T>(int statusCode, HttpRequest request, HttpHeaders headers, T body) implements HttpResponse<T> {
+        @Override
+        public Optional<HttpResponse<T>> previousResponse() {
+            return Optional.empty();
+        }
+
+        @Override
+        public Optional<SSLSession> sslSession() {
+            return Optional.empty();
+        }
+
+        @Override
+        public URI uri() {
+            return request.uri();
+        }
+
+        @Override
+        public HttpClient.Version version() {
+            return HttpClient.Version.HTTP_1_1;
+        }
+    }
+}
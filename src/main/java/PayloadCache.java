@@ -0,0 +1,34 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Encoded request bodies that are sent again and again (data provider rows, login payloads of pool users),
+ * keyed by the request object. Lookups take no lock. Once {@code maxEntries} bodies are stored, further ones
+ * are encoded without being kept: the cache is meant for a small fixed set, not for one-off payloads. Keys
+ * must have value equality and must not be changed after they are cached, so callers store a copy.
+ */
+public class PayloadCache<K> {
+    private final ConcurrentHashMap<K, byte[]> entries = new ConcurrentHashMap<>();
+    private final int maxEntries;
+
+    public PayloadCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /** Cached body for the key, or the encoded body, stored under {@code copy(key)} while there is room */
+    public byte[] get(K key, Function<K, K> copy, Function<K, byte[]> encoder) {
+        var body = entries.get(key);
+        if (body != null) {
+            return body;
+        }
+        body = encoder.apply(key);
+        if (entries.size() < maxEntries) {
+            entries.putIfAbsent(copy.apply(key), body);
+        }
+        return body;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+}
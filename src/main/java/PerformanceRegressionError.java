@@ -0,0 +1,6 @@
+/** Assertion failure for a run that is slower than its baseline of earlier runs */
+public class PerformanceRegressionError extends AssertionError {
+    public PerformanceRegressionError(String message) {
+        super(message);
+    }
+}
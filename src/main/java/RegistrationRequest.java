@@ -1,3 +1,5 @@
+import java.util.Objects;
+
 public class RegistrationRequest {
 
     private String username;  //mandatory
@@ -16,6 +18,11 @@ public class RegistrationRequest {
         this.lastName = lastName;
         this.middleName = middleName;
     }
+
+    public RegistrationRequest(RegistrationRequest other) {
+        this(other.username, other.password, other.email, other.firstName, other.lastName, other.middleName);
+    }
+
         public String getUsername() { return username; }
         public void setUsername(String username) { this.username = username; }
 
@@ -34,4 +41,22 @@ public class RegistrationRequest {
         public String getMiddleName() { return middleName; }
         public void setMiddleName(String middleName) { this.middleName = middleName;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        RegistrationRequest that = (RegistrationRequest) o;
+        return Objects.equals(username, that.username) &&
+                Objects.equals(password, that.password) &&
+                Objects.equals(email, that.email) &&
+                Objects.equals(firstName, that.firstName) &&
+                Objects.equals(lastName, that.lastName) &&
+                Objects.equals(middleName, that.middleName);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(username, password, email, firstName, lastName, middleName);
+    }
 }
@@ -1,3 +1,5 @@
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 import java.util.Objects;
 
 public class RegistrationResponse {
@@ -19,7 +21,9 @@ public class RegistrationResponse {
         this.middleName = middleName;
     }
 
+    @JsonProperty("id")
     public Integer getUserId() { return id; }
+    @JsonProperty("id")
     public void setUserId(Integer id) { this.id = id; }
 
     public String getEmail() { return email; }
@@ -0,0 +1,149 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the endpoints of a run that got slower than its rolling baseline of earlier runs. For each of p50,
+ * p90 and p99 the baseline runs give the percentile's mean and its spread from run to run, and a one-sided
+ * Student t prediction test gives the chance that another run like them comes out at least as high as the
+ * current one. Spread between runs (machine, network, data) is far larger than the sampling error within a
+ * run, so tests that pool the samples of several runs raise false alarms; this one needs
+ * {@code minBaselineRuns} runs before it judges anything.
+ *
+ * A percentile counts as regressed when that chance is below {@code significance} and the value also grew
+ * by at least {@code minSlowdown}, so a very steady baseline does not flag differences too small to matter.
+ * Endpoints with fewer than {@code minSamples} requests in a run are left out.
+ */
+public class RegressionCheck {
+    private static final double[] PERCENTILES = {50, 90, 99};
+    private final Config.History settings;
+
+    public RegressionCheck(Config.History settings) {
+        this.settings = settings;
+    }
+
+    /** One line per regressed endpoint percentile, empty when the run is in line with the baseline */
+    public List<String> verify(RunHistory.Run current, List<RunHistory.Run> baseline) {
+        var regressions = new ArrayList<String>();
+        for (var endpoint : current.endpoints) {
+            if (endpoint.requests < settings.minSamples) {
+                continue;
+            }
+            var earlier = new ArrayList<RunHistory.EndpointResult>();
+            for (var run : baseline) {
+                var result = run.endpoint(endpoint.endpoint);
+                if (result != null && result.requests >= settings.minSamples) {
+                    earlier.add(result);
+                }
+            }
+            if (earlier.size() >= settings.minBaselineRuns) {
+                regressions.addAll(verify(endpoint, earlier));
+            }
+        }
+        return regressions;
+    }
+
+    private List<String> verify(RunHistory.EndpointResult current, List<RunHistory.EndpointResult> baseline) {
+        var regressions = new ArrayList<String>();
+        var histogram = current.histogram();
+        var baselineHistograms = baseline.stream().map(RunHistory.EndpointResult::histogram).toList();
+        for (var percentile : PERCENTILES) {
+            var value = histogram.getValueAtPercentile(percentile) / 1000.0;
+            var values = baselineHistograms.stream().mapToDouble(h -> h.getValueAtPercentile(percentile) / 1000.0).toArray();
+            var reference = mean(values);
+            var p = predictionTestGreater(value, values);
+            if (p < settings.significance && value >= reference * (1 + settings.minSlowdown)) {
+                regressions.add(String.format("%s p%.0f is %.2f ms, baseline %.2f ms over %d runs (+%.0f%%, p=%.4f)",
+                        current.endpoint, percentile, value, reference, values.length, (value / reference - 1) * 100, p));
+            }
+        }
+        return regressions;
+    }
+
+    /**
+     * Chance that a new run of the baseline gives a value at least this high: the one-sided tail of a
+     * Student t distribution with n - 1 degrees of freedom at {@code (x - mean) / (s * sqrt(1 + 1/n))}.
+     * One run has no spread to compare against, so the baseline needs at least two.
+     */
+    static double predictionTestGreater(double value, double[] baseline) {
+        var n = baseline.length;
+        if (n < 2) {
+            throw new IllegalArgumentException("A baseline of " + n + " runs has no run-to-run variation to test against");
+        }
+        var mean = mean(baseline);
+        var variance = 0.0;
+        for (var v : baseline) {
+            variance += (v - mean) * (v - mean);
+        }
+        var s = Math.sqrt(variance / (n - 1));
+        if (s == 0) {
+            return value > mean ? 0.0 : 1.0;
+        }
+        var t = (value - mean) / (s * Math.sqrt(1 + 1.0 / n));
+        return 1 - studentTCdf(t, n - 1);
+    }
+
+    private static double mean(double[] values) {
+        var sum = 0.0;
+        for (var v : values) {
+            sum += v;
+        }
+        return sum / values.length;
+    }
+
+    static double studentTCdf(double t, int degreesOfFreedom) {
+        var x = degreesOfFreedom / (degreesOfFreedom + t * t);
+        var tail = 0.5 * regularizedBeta(x, degreesOfFreedom / 2.0, 0.5);
+        return t > 0 ? 1 - tail : tail;
+    }
+
+    /** I_x(a, b) by its continued fraction, evaluated with the modified Lentz method */
+    private static double regularizedBeta(double x, double a, double b) {
+        if (x <= 0) {
+            return 0;
+        }
+        if (x >= 1) {
+            return 1;
+        }
+        if (x > (a + 1) / (a + b + 2)) {
+            return 1 - regularizedBeta(1 - x, b, a);
+        }
+        var front = Math.exp(logGamma(a + b) - logGamma(a) - logGamma(b) + a * Math.log(x) + b * Math.log(1 - x)) / a;
+        var tiny = 1e-300;
+        var c = 1.0;
+        var d = 1 - (a + b) * x / (a + 1);
+        d = 1 / (Math.abs(d) < tiny ? tiny : d);
+        var f = d;
+        for (int m = 1; m <= 300; m++) {
+            for (int step = 0; step < 2; step++) {
+                var numerator = step == 0
+                        ? m * (b - m) * x / ((a + 2 * m - 1) * (a + 2 * m))
+                        : -(a + m) * (a + b + m) * x / ((a + 2 * m) * (a + 2 * m + 1));
+                d = 1 + numerator * d;
+                d = 1 / (Math.abs(d) < tiny ? tiny : d);
+                c = 1 + numerator / c;
+                c = Math.abs(c) < tiny ? tiny : c;
+                f *= c * d;
+            }
+            if (Math.abs(c * d - 1) < 1e-12) {
+                break;
+            }
+        }
+        return front * f;
+    }
+
+    /** Lanczos approximation, good to about 15 digits for positive arguments */
+    private static double logGamma(double x) {
+        double[] g = {0.99999999999980993, 676.5203681218851, -1259.1392167224028, 771.32342877765313,
+                -176.61502916214059, 12.507343278686905, -0.13857109526572012, 9.9843695780195716e-6, 1.5056327351493116e-7};
+        if (x < 0.5) {
+            return Math.log(Math.PI / Math.abs(Math.sin(Math.PI * x))) - logGamma(1 - x);
+        }
+        x -= 1;
+        var sum = g[0];
+        for (int i = 1; i < g.length; i++) {
+            sum += g[i] / (x + i);
+        }
+        var t = x + 7.5;
+        return 0.5 * Math.log(2 * Math.PI) + (x + 0.5) * Math.log(t) - t + Math.log(sum);
+    }
+}
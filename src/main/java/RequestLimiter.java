@@ -0,0 +1,60 @@
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * FIFO permit pool shared by blocking and async requests. Async callers get a future instead of parking
+ * a thread, so chained stages running on the client executor never block waiting for a permit.
+ */
+public class RequestLimiter {
+    private final ArrayDeque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+    private int available;
+
+    public RequestLimiter(int permits) {
+        this.available = permits;
+    }
+
+    public synchronized CompletableFuture<Void> acquireAsync() {
+        if (available > 0) {
+            available--;
+            return CompletableFuture.completedFuture(null);
+        }
+        var waiter = new CompletableFuture<Void>();
+        waiters.add(waiter);
+        return waiter;
+    }
+
+    public void acquire() throws InterruptedException {
+        var waiter = acquireAsync();
+        try {
+            waiter.get();
+        } catch (InterruptedException e) {
+            if (!waiter.cancel(false)) {
+                release();
+            }
+            throw e;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Permit wait failed", e.getCause());
+        }
+    }
+
+    public void release() {
+        while (true) {
+            CompletableFuture<Void> next;
+            synchronized (this) {
+                next = waiters.poll();
+                if (next == null) {
+                    available++;
+                    return;
+                }
+            }
+            if (next.complete(null)) {
+                return;
+            }
+        }
+    }
+
+    public synchronized int waiting() {
+        return waiters.size();
+    }
+}
@@ -0,0 +1,65 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The one log line per request, written by the client instead of by each caller. Every failure is logged
+ * with its body (server errors and transport failures as warnings); successes only one in
+ * {@code successSampleRate}. All lines are parameterized, so nothing is
+ * formatted for a request that is not logged. Set the {@code RequestLog} logger to DEBUG to see every request.
+ */
+public class RequestLog {
+    private static final Logger logger = LoggerFactory.getLogger(RequestLog.class);
+    private final int successSampleRate;
+    private final int maxBodyChars;
+    private final AtomicLong successes = new AtomicLong();
+
+    public RequestLog(Config.Logging settings) {
+        this.successSampleRate = settings.successSampleRate;
+        this.maxBodyChars = settings.maxBodyChars;
+    }
+
+    public void completed(HttpRequest request, HttpResponse<?> response, long latencyNanos) {
+        completed(request, response, latencyNanos, true);
+    }
+
+    /** Unsampled successes, e.g. of the warm-up, are logged only at DEBUG and do not move the sampling on */
+    public void completed(HttpRequest request, HttpResponse<?> response, long latencyNanos, boolean sampled) {
+        var status = response.statusCode();
+        if (status >= 500) {
+            logger.warn("{} {} -> {} in {} ms: {}", request.method(), request.uri(), status,
+                    TimeUnit.NANOSECONDS.toMillis(latencyNanos), body(response));
+        } else if (status / 100 != 2) {
+            logger.info("{} {} -> {} in {} ms: {}", request.method(), request.uri(), status,
+                    TimeUnit.NANOSECONDS.toMillis(latencyNanos), body(response));
+        } else if (sampled && sampled()) {
+            logger.info("{} {} -> {} in {} ms", request.method(), request.uri(), status, TimeUnit.NANOSECONDS.toMillis(latencyNanos));
+        } else if (logger.isDebugEnabled()) {
+            logger.debug("{} {} -> {} in {} ms", request.method(), request.uri(), status, TimeUnit.NANOSECONDS.toMillis(latencyNanos));
+        }
+    }
+
+    public void failed(HttpRequest request, Throwable error, long latencyNanos) {
+        var cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        logger.warn("{} {} failed after {} ms: {}", request.method(), request.uri(),
+                TimeUnit.NANOSECONDS.toMillis(latencyNanos), cause.toString());
+    }
+
+    private boolean sampled() {
+        return successSampleRate > 0 && logger.isInfoEnabled() && successes.getAndIncrement() % successSampleRate == 0;
+    }
+
+    /** String bodies cut to {@code maxBodyChars}; streamed bodies are not kept, so only their type is known */
+    private Object body(HttpResponse<?> response) {
+        var body = response.body();
+        if (body instanceof String text) {
+            return text.length() <= maxBodyChars ? text.trim() : text.substring(0, maxBodyChars) + "...";
+        }
+        return body;
+    }
+}
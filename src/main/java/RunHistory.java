@@ -0,0 +1,249 @@
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Results of past runs, one JSON file per run under {@code <directory>/<kind>/<target>/}: per endpoint
+ * latency histograms, throughput and error counts, with the target and git revision they were measured at.
+ * Runs of one kind (the suites, a load mix) against one target form the rolling baseline that
+ * {@link RegressionCheck} compares the next run with. Only the newest {@code keepRuns} of each are kept.
+ */
+public class RunHistory {
+    private static final Logger logger = LoggerFactory.getLogger(RunHistory.class);
+    /** Target name of runs against the in-process stub, whose port changes from run to run */
+    public static final String STUB_TARGET = "stub";
+    private static final DateTimeFormatter FILE_NAME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS").withZone(ZoneOffset.UTC);
+    private final Config.History settings;
+    private final Path directory;
+
+    public RunHistory(Config.History settings) {
+        if (settings.minBaselineRuns < 2) {
+            throw new IllegalArgumentException("history.minBaselineRuns must be at least 2, so the baseline shows how runs vary; got "
+                    + settings.minBaselineRuns);
+        }
+        this.settings = settings;
+        this.directory = settings.directory.startsWith("~/")
+                ? Path.of(System.getProperty("user.home"), settings.directory.substring(2))
+                : Path.of(settings.directory);
+    }
+
+    /** What runs with this configuration are compared by: the stub, or the host:port of every target */
+    public static String targetOf(Config config, Endpoints endpoints) {
+        return config.stub.enabled ? STUB_TARGET : endpoints.names();
+    }
+
+    /** The results of a run that just finished, not stored yet */
+    public static Run of(String kind, String target, LatencyRecorder latency, long durationNanos) {
+        var run = new Run();
+        run.kind = kind;
+        run.target = target;
+        run.finishedAt = Instant.now().toString();
+        run.gitRevision = gitRevision();
+        run.durationSeconds = durationNanos / 1e9;
+        var endpoints = new TreeMap<String, EndpointResult>();
+        for (var entry : latency.entries()) {
+            var result = endpoints.computeIfAbsent(entry.endpoint, EndpointResult::new);
+            var histogram = LatencyRecorder.decode(entry.histogram);
+            result.merged().add(histogram);
+            result.requests += entry.count;
+            if (entry.status == LatencyRecorder.NO_RESPONSE || entry.status >= 500) {
+                result.errors += entry.count;
+            } else if (entry.status >= 400) {
+                result.clientErrors += entry.count;
+            }
+        }
+        for (var result : endpoints.values()) {
+            result.summarize(run.durationSeconds);
+            run.endpoints.add(result);
+        }
+        return run;
+    }
+
+    /**
+     * Stores the run and compares it with the recent runs of the same kind against the same target. Logs
+     * and returns the regressions, and throws them with {@code failOnRegression}. A history that cannot be
+     * read or written is logged, not fatal.
+     */
+    public List<String> record(Run run) {
+        List<String> regressions;
+        try {
+            var baseline = baseline(run.kind, run.target);
+            var file = store(run);
+            logger.info("Run stored as " + file.toAbsolutePath() + ", revision " + run.gitRevision);
+            if (baseline.size() < settings.minBaselineRuns) {
+                logger.info(baseline.size() + " earlier " + run.kind + " runs against " + run.target + ", comparing from "
+                        + settings.minBaselineRuns + " on");
+                return List.of();
+            }
+            regressions = new RegressionCheck(settings).verify(run, baseline);
+            logger.info("Compared with " + baseline.size() + " earlier " + run.kind + " runs: "
+                    + (regressions.isEmpty() ? "no regressions" : regressions.size() + " regressions"));
+        } catch (IOException e) {
+            logger.error("Could not update the run history in " + directory + ": " + e.getMessage());
+            return List.of();
+        }
+        regressions.forEach(regression -> logger.warn("Slower than the baseline: " + regression));
+        if (!regressions.isEmpty() && settings.failOnRegression) {
+            throw new PerformanceRegressionError(run.kind + " run is slower than the baseline: " + String.join("; ", regressions));
+        }
+        return regressions;
+    }
+
+    /** Writes the run next to the earlier ones, the file appearing complete or not at all, and drops the oldest */
+    public Path store(Run run) throws IOException {
+        var folder = folderOf(run.kind, run.target);
+        Files.createDirectories(folder);
+        var file = folder.resolve(FILE_NAME.format(Instant.parse(run.finishedAt)) + ".json");
+        var partial = folder.resolve(file.getFileName() + ".tmp");
+        Serialization.mapper().writeValue(partial.toFile(), run);
+        Files.move(partial, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        var stored = runFiles(folder);
+        for (var old : stored.subList(Math.min(stored.size(), Math.max(settings.keepRuns, 1)), stored.size())) {
+            Files.deleteIfExists(old);
+        }
+        return file;
+    }
+
+    /** Up to {@code baselineRuns} most recent stored runs of the same kind against the same target, newest first */
+    public List<Run> baseline(String kind, String target) throws IOException {
+        var folder = folderOf(kind, target);
+        var runs = new ArrayList<Run>();
+        if (!Files.isDirectory(folder)) {
+            return runs;
+        }
+        for (var file : runFiles(folder)) {
+            if (runs.size() >= settings.baselineRuns) {
+                break;
+            }
+            try {
+                runs.add(Serialization.mapper().readValue(file.toFile(), Run.class));
+            } catch (IOException e) {
+                logger.warn("Skipping unreadable run " + file + ": " + e.getMessage());
+            }
+        }
+        return runs;
+    }
+
+    /** Stored runs in a folder, newest first: file names start with the UTC time the run finished */
+    private static List<Path> runFiles(Path folder) throws IOException {
+        try (Stream<Path> listing = Files.list(folder)) {
+            return listing.filter(file -> file.getFileName().toString().endsWith(".json"))
+                    .sorted(Comparator.comparing(Path::getFileName).reversed())
+                    .toList();
+        }
+    }
+
+    /** HEAD of the working directory's repository, marked dirty when there are uncommitted changes; null outside git */
+    static String gitRevision() {
+        var revision = git("rev-parse", "HEAD");
+        if (revision == null || revision.isEmpty()) {
+            return null;
+        }
+        var changes = git("status", "--porcelain", "--untracked-files=no");
+        return changes == null || changes.isEmpty() ? revision : revision + "-dirty";
+    }
+
+    private static String git(String... args) {
+        var command = new ArrayList<String>();
+        command.add("git");
+        command.addAll(List.of(args));
+        try {
+            var process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            var output = new String(process.getInputStream().readAllBytes()).trim();
+            if (!process.waitFor(5, TimeUnit.SECONDS) || process.exitValue() != 0) {
+                process.destroy();
+                return null;
+            }
+            return output;
+        } catch (IOException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private Path folderOf(String kind, String target) {
+        return directory.resolve(safe(kind)).resolve(safe(target));
+    }
+
+    private static String safe(String name) {
+        return name.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    public static class Run {
+        public String kind;
+        public String target;
+        public String finishedAt;
+        public String gitRevision;
+        public double durationSeconds;
+        public List<EndpointResult> endpoints = new ArrayList<>();
+
+        public EndpointResult endpoint(String name) {
+            for (var endpoint : endpoints) {
+                if (endpoint.endpoint.equals(name)) {
+                    return endpoint;
+                }
+            }
+            return null;
+        }
+    }
+
+    /** One endpoint of a run, all status codes merged; errors are 5xx and requests without a response */
+    public static class EndpointResult {
+        public String endpoint;
+        public long requests;
+        public long errors;
+        public long clientErrors;
+        public double throughput;
+        public double p50Ms;
+        public double p90Ms;
+        public double p99Ms;
+        public double maxMs;
+        public String histogram;
+        private Histogram merged;
+
+        public EndpointResult() {
+        }
+
+        EndpointResult(String endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        /** Latency in microseconds */
+        public Histogram histogram() {
+            return LatencyRecorder.decode(histogram);
+        }
+
+        private Histogram merged() {
+            if (merged == null) {
+                merged = new Histogram(3);
+            }
+            return merged;
+        }
+
+        private void summarize(double durationSeconds) {
+            throughput = durationSeconds > 0 ? requests / durationSeconds : 0;
+            p50Ms = merged.getValueAtPercentile(50) / 1000.0;
+            p90Ms = merged.getValueAtPercentile(90) / 1000.0;
+            p99Ms = merged.getValueAtPercentile(99) / 1000.0;
+            maxMs = merged.getMaxValue() / 1000.0;
+            histogram = LatencyRecorder.encode(merged);
+            merged = null;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.UncheckedIOException;
+
+/**
+ * The one ObjectMapper of the framework, with readers and writers for the API payloads created and
+ * warmed up once, so the first requests of a run do not pay for serializer lookup. Request bodies are
+ * encoded straight to UTF-8 bytes. Callers that send the same payload again and again (data provider rows,
+ * login payloads of pool users) ask for {@code cachedJson} instead and get it from a bounded cache.
+ */
+public final class Serialization {
+    private static final int PAYLOAD_CACHE_SIZE = 1024;
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final ObjectWriter registrationWriter = mapper.writerFor(RegistrationRequest.class);
+    private static final ObjectWriter loginWriter = mapper.writerFor(LoginRequest.class);
+    private static final ObjectReader registrationResponseReader = mapper.readerFor(RegistrationResponse.class);
+    private static final ObjectReader treeReader = mapper.readerFor(JsonNode.class);
+    private static final PayloadCache<RegistrationRequest> registrationBodies = new PayloadCache<>(PAYLOAD_CACHE_SIZE);
+    private static final PayloadCache<LoginRequest> loginBodies = new PayloadCache<>(PAYLOAD_CACHE_SIZE);
+
+    static {
+        try {
+            registrationWriter.writeValueAsBytes(new RegistrationRequest("warmup", "Password1@", "warmup@mail.com", "A", "B", "C"));
+            loginWriter.writeValueAsBytes(new LoginRequest("warmup", "Password1@"));
+            registrationResponseReader.readValue("{\"id\":1,\"username\":\"warmup\",\"email\":\"warmup@mail.com\","
+                    + "\"firstName\":\"A\",\"lastName\":\"B\",\"middleName\":null}");
+            treeReader.readTree("{\"status\":\"healthy\"}");
+        } catch (JsonProcessingException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Serialization() {}
+
+    public static ObjectMapper mapper() { return mapper; }
+
+    public static byte[] toJson(RegistrationRequest request) throws JsonProcessingException {
+        return registrationWriter.writeValueAsBytes(request);
+    }
+
+    public static byte[] toJson(LoginRequest request) throws JsonProcessingException {
+        return loginWriter.writeValueAsBytes(request);
+    }
+
+    public static byte[] cachedJson(RegistrationRequest request) throws JsonProcessingException {
+        try {
+            return registrationBodies.get(request, RegistrationRequest::new, value -> write(registrationWriter, value));
+        } catch (UncheckedIOException e) {
+            throw (JsonProcessingException) e.getCause();
+        }
+    }
+
+    public static byte[] cachedJson(LoginRequest request) throws JsonProcessingException {
+        try {
+            return loginBodies.get(request, LoginRequest::new, value -> write(loginWriter, value));
+        } catch (UncheckedIOException e) {
+            throw (JsonProcessingException) e.getCause();
+        }
+    }
+
+    public static RegistrationResponse readRegistrationResponse(String body) throws JsonProcessingException {
+        return registrationResponseReader.readValue(body);
+    }
+
+    public static JsonNode readTree(String body) throws JsonProcessingException {
+        return treeReader.readTree(body);
+    }
+
+    private static byte[] write(ObjectWriter writer, Object value) {
+        try {
+            return writer.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,306 @@
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteBufferFeeder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+/**
+ * Validates a JSON response while it streams in: every buffer received by the HTTP client is fed straight
+ * into Jackson's non-blocking parser, without building the body String or a JsonNode tree. Expected
+ * top-level fields are compared in place against the parser's character buffer; only captured fields
+ * (user id, access token, error message) and mismatches become Strings. Only successful JSON responses are
+ * streamed: error responses may be HTML or plain text pages, so their first {@value #RAW_LIMIT} bytes are
+ * kept as they are and the captured fields read from them when they turn out to be JSON.
+ */
+public class StreamingValidator {
+    private static final JsonFactory factory = new JsonFactory();
+    private static final String ERROR_FIELD = "error";
+    private static final int RAW_LIMIT = 4096;
+    private final Map<String, String> expected;
+    private final Set<String> captured;
+
+    private StreamingValidator(Map<String, String> expected, Set<String> captured) {
+        this.expected = expected;
+        this.captured = captured;
+    }
+
+    /** Fields of {@link RegistrationResponse}, returned by register and by get user */
+    public static StreamingValidator user(RegistrationRequest registration) {
+        var expected = new HashMap<String, String>();
+        expected.put("username", registration.getUsername());
+        expected.put("email", registration.getEmail());
+        expected.put("firstName", registration.getFirstName());
+        expected.put("middleName", registration.getMiddleName());
+        expected.put("lastName", registration.getLastName());
+        return new StreamingValidator(expected, Set.of("id", ERROR_FIELD));
+    }
+
+    public static StreamingValidator health() {
+        return new StreamingValidator(Map.of("status", "healthy"), Set.of(ERROR_FIELD));
+    }
+
+    public static StreamingValidator login() {
+        return new StreamingValidator(Map.of("message", "Login successful"), Set.of("access-token", ERROR_FIELD));
+    }
+
+    public HttpResponse.BodyHandler<Result> bodyHandler() {
+        return responseInfo -> streamed(responseInfo)
+                ? new FieldSubscriber(responseInfo.statusCode())
+                : new RawSubscriber(responseInfo.statusCode());
+    }
+
+    private static boolean streamed(HttpResponse.ResponseInfo responseInfo) {
+        return responseInfo.statusCode() / 100 == 2
+                && responseInfo.headers().firstValue("Content-Type").map(type -> type.contains("json")).orElse(true);
+    }
+
+    /** What the parser found: captured values and every expected field that did not match */
+    public static class Result {
+        private final int statusCode;
+        private final Map<String, String> values = new HashMap<>(4);
+        private final List<String> mismatches = new ArrayList<>(0);
+        private String rawBody;
+
+        Result(int statusCode) {
+            this.statusCode = statusCode;
+        }
+
+        public String value(String field) { return values.get(field); }
+
+        public List<String> mismatches() { return mismatches; }
+
+        /** The start of a body that was not streamed, e.g. an error page; null for streamed responses */
+        public String rawBody() { return rawBody; }
+
+        /** Throws the same assertion errors as the tree-based checks in BaseClass */
+        public Result expectValid(String stage, int expectedStatus) {
+            if (statusCode != expectedStatus) {
+                var error = values.get(ERROR_FIELD);
+                throw new UnexpectedResponseError(stage, expectedStatus, statusCode, rawBody != null ? rawBody
+                        : error == null ? "" : "{\"" + ERROR_FIELD + "\":\"" + error + "\"}\n");
+            }
+            if (!mismatches.isEmpty()) {
+                throw new AssertionError(stage + ": " + String.join(", ", mismatches));
+            }
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return mismatches.isEmpty() ? values.toString() : values + ", mismatches " + mismatches;
+        }
+    }
+
+    private class FieldSubscriber implements HttpResponse.BodySubscriber<Result> {
+        private final CompletableFuture<Result> body = new CompletableFuture<>();
+        private final Result result;
+        private final Set<String> seen = new HashSet<>(8);
+        private final JsonParser parser;
+        private final ByteBufferFeeder feeder;
+        private Flow.Subscription subscription;
+        private String field;
+        private int depth;
+
+        FieldSubscriber(int statusCode) {
+            this.result = new Result(statusCode);
+            try {
+                this.parser = factory.createNonBlockingByteBufferParser();
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not create JSON parser", e);
+            }
+            this.feeder = (ByteBufferFeeder) parser.getNonBlockingInputFeeder();
+        }
+
+        @Override
+        public CompletionStage<Result> getBody() {
+            return body;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            if (body.isDone()) {
+                return;
+            }
+            try {
+                for (var buffer : buffers) {
+                    if (buffer.hasRemaining()) {
+                        feeder.feedInput(buffer);
+                        drain();
+                    }
+                }
+                subscription.request(1);
+            } catch (IOException e) {
+                subscription.cancel();
+                notJson(e);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            body.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            if (body.isDone()) {
+                return;
+            }
+            try {
+                feeder.endOfInput();
+                drain();
+                parser.close();
+                if (result.statusCode / 100 == 2) {
+                    for (var name : expected.keySet()) {
+                        if (!seen.contains(name)) {
+                            result.mismatches.add(name + " is missing");
+                        }
+                    }
+                }
+                body.complete(result);
+            } catch (IOException e) {
+                notJson(e);
+            }
+        }
+
+        /** A body that is not JSON still answers with its real status, failing the checks instead of the request */
+        private void notJson(IOException e) {
+            var message = e instanceof JsonProcessingException json ? json.getOriginalMessage() : e.getMessage();
+            result.mismatches.add("body is not valid JSON: " + message);
+            body.complete(result);
+        }
+
+        private void drain() throws IOException {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+                switch (token) {
+                    case START_OBJECT, START_ARRAY -> depth++;
+                    case END_OBJECT, END_ARRAY -> depth--;
+                    case FIELD_NAME -> field = depth == 1 ? parser.currentName() : null;
+                    default -> {
+                        if (depth == 1 && field != null) {
+                            check(field, token);
+                        }
+                    }
+                }
+            }
+        }
+
+        private void check(String name, JsonToken token) throws IOException {
+            if (expected.containsKey(name)) {
+                seen.add(name);
+                var value = expected.get(name);
+                if (!textEquals(token, value)) {
+                    result.mismatches.add(name + " should be " + value + " but it is " + parser.getText());
+                }
+            }
+            if (captured.contains(name)) {
+                result.values.put(name, parser.getText());
+            }
+        }
+
+        private boolean textEquals(JsonToken token, String value) throws IOException {
+            if (value == null) {
+                return token == JsonToken.VALUE_NULL;
+            }
+            if (token != JsonToken.VALUE_STRING || parser.getTextLength() != value.length()) {
+                return false;
+            }
+            var chars = parser.getTextCharacters();
+            var offset = parser.getTextOffset();
+            for (int i = 0; i < value.length(); i++) {
+                if (chars[offset + i] != value.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /** Keeps the start of a body that is not streamed and reads the captured fields from it if it is JSON */
+    private class RawSubscriber implements HttpResponse.BodySubscriber<Result> {
+        private final CompletableFuture<Result> body = new CompletableFuture<>();
+        private final Result result;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        private Flow.Subscription subscription;
+
+        RawSubscriber(int statusCode) {
+            this.result = new Result(statusCode);
+        }
+
+        @Override
+        public CompletionStage<Result> getBody() {
+            return body;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            for (var buffer : buffers) {
+                var n = Math.min(buffer.remaining(), RAW_LIMIT - bytes.size());
+                if (n > 0) {
+                    var chunk = new byte[n];
+                    buffer.get(chunk);
+                    bytes.writeBytes(chunk);
+                }
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            body.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            var raw = bytes.toByteArray();
+            result.rawBody = new String(raw, StandardCharsets.UTF_8);
+            try (var parser = factory.createParser(raw)) {
+                var depth = 0;
+                String field = null;
+                JsonToken token;
+                while ((token = parser.nextToken()) != null) {
+                    switch (token) {
+                        case START_OBJECT, START_ARRAY -> depth++;
+                        case END_OBJECT, END_ARRAY -> depth--;
+                        case FIELD_NAME -> field = depth == 1 ? parser.currentName() : null;
+                        default -> {
+                            if (depth == 1 && field != null && captured.contains(field)) {
+                                result.values.put(field, parser.getText());
+                            }
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // not JSON, or cut off at the limit: the raw body is all there is
+            }
+            body.complete(result);
+        }
+    }
+}
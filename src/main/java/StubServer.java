@@ -0,0 +1,315 @@
+import com.fasterxml.jackson.databind.JsonNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * In-process copy of the registration API contract: the same endpoints, status codes, validation order
+ * and error messages the suites assert on. It runs on the JDK's selector-based HTTP server with an
+ * in-memory user store, so suites and load runs work offline and measure the framework's own overhead.
+ * Tokens expire after {@code stub.tokenTtlSeconds} like the service's, and are then rejected as invalid.
+ * Enable it with {@code stub.enabled}, or run it standalone with
+ * {@code mvn compile exec:java -Dexec.mainClass=StubServer}.
+ */
+public class StubServer {
+    private static final Logger logger = LoggerFactory.getLogger(StubServer.class);
+    private static final Pattern EMAIL = Pattern.compile("^[^@\\s]+@[^@\\s]+\\.[^@\\s]+$");
+    private static final Pattern USER_ID = Pattern.compile("^/user/(\\d+)$");
+    private static final String JWT_HEADER = base64Url("{\"alg\":\"HS256\",\"typ\":\"JWT\"}");
+    private static final byte[] HEALTHY = BaseClass.HEALTHY_RESPONSE.getBytes(StandardCharsets.UTF_8);
+    private final Config.Stub settings;
+    private final Map<String, User> usersByName = new ConcurrentHashMap<>();
+    private final Map<Integer, User> usersById = new ConcurrentHashMap<>();
+    private final Map<String, String> emails = new ConcurrentHashMap<>();
+    private final Map<String, Token> tokens = new ConcurrentHashMap<>();
+    private final AtomicInteger ids = new AtomicInteger();
+    private final AtomicLong nextSweep = new AtomicLong();
+    private final SecureRandom random = new SecureRandom();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public StubServer(Config.Stub settings) {
+        this.settings = settings;
+    }
+
+    public static void main(String[] args) throws IOException {
+        var config = YamlReader.config();
+        new StubServer(config.stub).start();
+    }
+
+    /**
+     * The JDK server writes headers and body separately; without TCP_NODELAY every response waits for a
+     * delayed ACK. The server reads the property once, when the first HttpServer of the JVM is created, so
+     * every place that creates one calls this first; it has no effect on servers created before.
+     */
+    static void enableNoDelay() {
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    public StubServer start() throws IOException {
+        enableNoDelay();
+        var threads = settings.threads > 0 ? settings.threads : Runtime.getRuntime().availableProcessors();
+        executor = ThreadMode.PLATFORM.newExecutor("stub-", threads);
+        server = HttpServer.create(new InetSocketAddress(settings.bindAddress, settings.port), settings.backlog);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+        logger.info("Stub API listening on " + settings.bindAddress + ":" + port() + " with " + threads + " threads");
+        return this;
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (var body = exchange.getRequestBody()) {
+            var method = exchange.getRequestMethod();
+            var path = exchange.getRequestURI().getPath();
+            if (path.equals("/" + BaseClass.HEALTH_PATH) && method.equals("GET")) {
+                respond(exchange, 200, HEALTHY);
+            } else if (path.equals("/" + BaseClass.REGISTER_PATH) && method.equals("POST")) {
+                register(exchange, body);
+            } else if (path.equals("/" + BaseClass.LOGIN_PATH) && method.equals("POST")) {
+                login(exchange, body);
+            } else if (USER_ID.matcher(path).matches() && (method.equals("GET") || method.equals("DELETE"))) {
+                user(exchange, method, userId(path.substring(path.lastIndexOf('/') + 1)));
+            } else {
+                error(exchange, 404, "Not found");
+            }
+        } catch (RuntimeException e) {
+            logger.error("Stub failed on " + exchange.getRequestURI() + ": " + e);
+            if (exchange.getResponseCode() == -1) {
+                error(exchange, 500, "Internal Server Error");
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void register(HttpExchange exchange, InputStream body) throws IOException {
+        var json = readJson(exchange, body);
+        if (json == null) {
+            return;
+        }
+        var missing = new StringBuilder();
+        for (var field : new String[] {"username", "password", "email"}) {
+            if (!json.hasNonNull(field)) {
+                missing.append(missing.length() == 0 ? "" : ", ").append(field);
+            }
+        }
+        if (missing.length() > 0) {
+            error(exchange, 400, "Missing required fields: " + missing);
+            return;
+        }
+        var username = json.get("username").asText();
+        var password = json.get("password").asText();
+        var email = json.get("email").asText();
+        var problem = validate(username, password, email);
+        if (problem != null) {
+            error(exchange, 400, problem);
+            return;
+        }
+
+        var user = new User(ids.incrementAndGet(), username, password, email,
+                text(json, "firstName"), text(json, "lastName"), text(json, "middleName"));
+        if (usersByName.putIfAbsent(username, user) != null) {
+            error(exchange, 400, "Username already exists");
+            return;
+        }
+        if (emails.putIfAbsent(email, username) != null) {
+            usersByName.remove(username, user);
+            error(exchange, 400, "Email already exists");
+            return;
+        }
+        usersById.put(user.id(), user);
+        respond(exchange, 200, user.toJson());
+    }
+
+    private static String validate(String username, String password, String email) {
+        if (username.length() < 5 || username.length() > 8) {
+            return "Username must be between 5 and 8 characters";
+        }
+        if (password.length() < 6) {
+            return "Password must be at least 6 characters long";
+        }
+        if (password.chars().noneMatch(c -> c >= 'A' && c <= 'Z')) {
+            return "Password must contain at least one uppercase letter";
+        }
+        if (password.chars().noneMatch(c -> c >= '0' && c <= '9')) {
+            return "Password must contain at least one number";
+        }
+        if (password.chars().allMatch(c -> c < 128 && Character.isLetterOrDigit(c))) {
+            return "Password must contain at least one special character";
+        }
+        if (!EMAIL.matcher(email).matches()) {
+            return "Invalid email format";
+        }
+        return null;
+    }
+
+    private void login(HttpExchange exchange, InputStream body) throws IOException {
+        var json = readJson(exchange, body);
+        if (json == null) {
+            return;
+        }
+        var user = usersByName.get(json.path("username").asText());
+        if (user == null) {
+            error(exchange, 401, "User does not exist");
+            return;
+        }
+        if (!user.password().equals(json.path("password").asText())) {
+            error(exchange, 401, "Invalid password");
+            return;
+        }
+        var now = System.currentTimeMillis();
+        sweepExpired(now);
+        var expiry = now / 1000 + settings.tokenTtlSeconds;
+        var token = newToken(user.id(), expiry);
+        tokens.put(token, new Token(user.id(), expiry));
+        var response = new LinkedHashMap<String, Object>();
+        response.put("access-token", token);
+        response.put("message", "Login successful");
+        respond(exchange, 200, toJson(response));
+    }
+
+    private void user(HttpExchange exchange, String method, int id) throws IOException {
+        var value = String.valueOf(exchange.getRequestHeaders().getFirst("Authorization"));
+        var token = tokens.get(value);
+        if (token == null || token.expired(System.currentTimeMillis())) {
+            if (token != null) {
+                tokens.remove(value, token);
+            }
+            error(exchange, 401, "Invalid token");
+            return;
+        }
+        var user = usersById.get(id);
+        if (user == null) {
+            error(exchange, 404, "User not found");
+            return;
+        }
+        if (method.equals("DELETE")) {
+            usersById.remove(id, user);
+            usersByName.remove(user.username(), user);
+            emails.remove(user.email(), user.username());
+            tokens.values().removeIf(tokenOf -> tokenOf.userId() == id);
+            respond(exchange, 200, toJson(Map.of("message", "User deleted")));
+            return;
+        }
+        respond(exchange, 200, user.toJson());
+    }
+
+    /** The id of /user/{id}; one too large for an int belongs to no user, so it is answered like an unknown one */
+    private static int userId(String digits) {
+        try {
+            return Integer.parseInt(digits);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Drops the tokens that expired without being used again, at most once per token lifetime, so a long run
+     * holds no more than two lifetimes of logins
+     */
+    private void sweepExpired(long now) {
+        var due = nextSweep.get();
+        if (now >= due && nextSweep.compareAndSet(due, now + settings.tokenTtlSeconds * 1000L)) {
+            tokens.values().removeIf(token -> token.expired(now));
+        }
+    }
+
+    /** JWT shaped token with an {@code exp} claim, so clients can handle expiry as with the real service */
+    private String newToken(int userId, long expiry) {
+        var signature = new byte[16];
+        random.nextBytes(signature);
+        return JWT_HEADER + "." + base64Url("{\"sub\":" + userId + ",\"exp\":" + expiry + "}") + "."
+                + Base64.getUrlEncoder().withoutPadding().encodeToString(signature);
+    }
+
+    private static JsonNode readJson(HttpExchange exchange, InputStream body) throws IOException {
+        try {
+            var json = Serialization.mapper().readTree(body);
+            if (json != null && json.isObject()) {
+                return json;
+            }
+        } catch (IOException e) {
+            // answered below like a malformed body
+        }
+        error(exchange, 400, "Bad Request");
+        return null;
+    }
+
+    private static String text(JsonNode json, String field) {
+        return json.hasNonNull(field) ? json.get(field).asText() : null;
+    }
+
+    private static void error(HttpExchange exchange, int status, String message) throws IOException {
+        respond(exchange, status, toJson(Map.of("error", message)));
+    }
+
+    private static byte[] toJson(Map<String, ?> fields) {
+        try {
+            var json = Serialization.mapper().writeValueAsString(fields) + "\n";
+            return json.getBytes(StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    private static String base64Url(String json) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** A token's user and its {@code exp} claim, in epoch seconds */
+    private record Token(int userId, long expiry) {
+        boolean expired(long nowMillis) {
+            return nowMillis >= expiry * 1000;
+        }
+    }
+
+    private record User(int id, String username, String password, String email,
+                        String firstName, String lastName, String middleName) {
+        byte[] toJson() {
+            var fields = new LinkedHashMap<String, Object>();
+            fields.put("email", email);
+            fields.put("firstName", firstName);
+            fields.put("id", id);
+            fields.put("lastName", lastName);
+            fields.put("middleName", middleName);
+            fields.put("username", username);
+            return StubServer.toJson(fields);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Probes the health endpoint of every target on a fixed interval and takes a target out of rotation after
+ * {@code unhealthyThreshold} failed checks in a row, putting it back after {@code healthyThreshold} passed
+ * ones. Probes bypass the request limiter and are not counted in the run's statistics.
+ */
+public class TargetHealthChecker {
+    private static final Logger logger = LoggerFactory.getLogger(TargetHealthChecker.class);
+    private final Endpoints endpoints;
+    private final HttpClientManager clientManager;
+    private final Config.Balancing settings;
+    private final Duration timeout;
+    private final Map<Endpoints.Target, Integer> streaks = new HashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    public TargetHealthChecker(Endpoints endpoints, HttpClientManager clientManager, Config.Balancing settings) {
+        this.endpoints = endpoints;
+        this.clientManager = clientManager;
+        this.settings = settings;
+        this.timeout = Duration.ofMillis(settings.healthCheckTimeoutMs);
+    }
+
+    /** Starts checking when there is more than one target to choose from and checks are enabled */
+    public synchronized TargetHealthChecker start() {
+        if (scheduler != null || endpoints.targets().size() < 2 || settings.healthCheckIntervalSeconds <= 0) {
+            return this;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(ThreadMode.PLATFORM.threadFactory("health-check-"));
+        scheduler.scheduleWithFixedDelay(this::checkAll, 0, settings.healthCheckIntervalSeconds, TimeUnit.SECONDS);
+        logger.info("Checking health of " + endpoints.targets() + " every " + settings.healthCheckIntervalSeconds
+                + " s, balancing: " + endpoints.strategy());
+        return this;
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /** Probes all targets at once, then applies the results; only the scheduler thread gets here */
+    void checkAll() {
+        var probes = new HashMap<Endpoints.Target, CompletableFuture<Boolean>>();
+        for (var target : endpoints.targets()) {
+            probes.put(target, probe(target));
+        }
+        probes.forEach((target, probe) -> update(target, probe.join()));
+    }
+
+    private CompletableFuture<Boolean> probe(Endpoints.Target target) {
+        try {
+            return clientManager.probe(target.health(), timeout)
+                    .handle((response, error) -> error == null && isHealthy(response));
+        } catch (RuntimeException e) {
+            return CompletableFuture.completedFuture(false);
+        }
+    }
+
+    private static boolean isHealthy(HttpResponse<String> response) {
+        return response.statusCode() == 200 && BaseClass.HEALTHY_RESPONSE.equals(response.body());
+    }
+
+    /** Positive streaks count passed checks, negative ones failed checks */
+    private void update(Endpoints.Target target, boolean passed) {
+        var previous = streaks.getOrDefault(target, 0);
+        var streak = passed ? Math.max(previous, 0) + 1 : Math.min(previous, 0) - 1;
+        streaks.put(target, streak);
+        if (target.healthy() && -streak >= settings.unhealthyThreshold) {
+            target.setHealthy(false);
+            logger.warn("Target " + target + " failed " + -streak + " health checks in a row, taking it out of rotation");
+        } else if (!target.healthy() && streak >= settings.healthyThreshold) {
+            target.setHealthy(true);
+            logger.info("Target " + target + " passed " + streak + " health checks in a row, putting it back in rotation");
+        }
+    }
+}
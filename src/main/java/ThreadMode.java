@@ -0,0 +1,57 @@
+import java.lang.reflect.InvocationTargetException;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Platform or virtual threads for the executors the framework creates. Virtual threads are looked up
+ * reflectively so the default Java 17 build still compiles; they need the Java 21 profile at runtime.
+ */
+public enum ThreadMode {
+    PLATFORM,
+    VIRTUAL;
+
+    /** The {@code execution.threadMode} setting, e.g. {@code -Dfinbet.execution.threadMode=virtual} */
+    public static ThreadMode of(Config.Execution execution) {
+        return valueOf(execution.threadMode.trim().toUpperCase(Locale.ROOT));
+    }
+
+    public ThreadFactory threadFactory(String namePrefix) {
+        if (this == VIRTUAL) {
+            return virtualThreadFactory(namePrefix);
+        }
+        var threadNumber = new AtomicInteger();
+        return runnable -> {
+            var thread = new Thread(runnable, namePrefix + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /** A fixed pool of {@code platformThreads} threads, or a new virtual thread for every task */
+    public ExecutorService newExecutor(String namePrefix, int platformThreads) {
+        if (this == VIRTUAL) {
+            try {
+                return (ExecutorService) Executors.class
+                        .getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                        .invoke(null, virtualThreadFactory(namePrefix));
+            } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+                throw new IllegalStateException("Virtual threads require Java 21 or newer", e);
+            }
+        }
+        return Executors.newFixedThreadPool(platformThreads, threadFactory(namePrefix));
+    }
+
+    private static ThreadFactory virtualThreadFactory(String namePrefix) {
+        try {
+            var builderType = Class.forName("java.lang.Thread$Builder");
+            var builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 1L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Virtual threads require Java 21 or newer", e);
+        }
+    }
+}
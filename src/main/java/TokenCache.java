@@ -0,0 +1,143 @@
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Access tokens per user, so authenticated requests reuse a token the way real clients do instead of
+ * logging in every time. A token is used until the configured TTL or, for JWTs, until its {@code exp}
+ * claim, minus a refresh margin. Refresh is single-flight: callers that find no usable token while a login
+ * for the same user is running wait for that login instead of starting another one. Failed logins are not
+ * cached. Past {@code maxEntries} the expired tokens go first, then the ones expiring soonest.
+ */
+public class TokenCache {
+    private final ConcurrentHashMap<String, CompletableFuture<Token>> tokens = new ConcurrentHashMap<>();
+    private final long ttlNanos;
+    private final long refreshMarginNanos;
+    private final int maxEntries;
+    private final LongAdder logins = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+
+    public TokenCache(Config.Tokens settings) {
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(settings.ttlSeconds);
+        this.refreshMarginNanos = TimeUnit.SECONDS.toNanos(settings.refreshMarginSeconds);
+        this.maxEntries = settings.maxEntries;
+    }
+
+    /** The cached token of the user, or the result of {@code login}, which runs at most once at a time per user */
+    public CompletableFuture<String> get(String username, Supplier<CompletableFuture<String>> login) {
+        var now = System.nanoTime();
+        var cached = tokens.get(username);
+        if (cached != null && usable(cached, now)) {
+            hits.increment();
+            return cached.thenApply(Token::value);
+        }
+
+        var refresh = new CompletableFuture<Token>();
+        var current = tokens.compute(username, (key, existing) -> existing != null && usable(existing, now) ? existing : refresh);
+        if (current != refresh) {
+            hits.increment();
+            return current.thenApply(Token::value);
+        }
+
+        logins.increment();
+        evictIfFull(now);
+        CompletableFuture<String> loggedIn;
+        try {
+            loggedIn = login.get();
+        } catch (RuntimeException e) {
+            loggedIn = CompletableFuture.failedFuture(e);
+        }
+        loggedIn.whenComplete((token, error) -> {
+            if (error != null) {
+                tokens.remove(username, refresh);
+                refresh.completeExceptionally(error);
+            } else {
+                refresh.complete(new Token(token, expiresAt(token, System.nanoTime())));
+            }
+        });
+        return refresh.thenApply(Token::value);
+    }
+
+    /** Stores a token obtained outside the cache, e.g. by a login test */
+    public void put(String username, String token) {
+        tokens.put(username, CompletableFuture.completedFuture(new Token(token, expiresAt(token, System.nanoTime()))));
+        evictIfFull(System.nanoTime());
+    }
+
+    /** Drops the token after the service rejected it, so the next request logs in again */
+    public void invalidate(String username) {
+        tokens.remove(username);
+    }
+
+    public int size() {
+        return tokens.size();
+    }
+
+    @Override
+    public String toString() {
+        return "tokens: " + tokens.size() + " cached, " + logins.sum() + " logins, " + hits.sum() + " reused";
+    }
+
+    private boolean usable(CompletableFuture<Token> token, long now) {
+        if (!token.isDone()) {
+            return true;
+        }
+        return !token.isCompletedExceptionally() && token.join().expiresAt() - refreshMarginNanos > now;
+    }
+
+    private long expiresAt(String token, long now) {
+        var jwtExpiry = jwtExpiryEpochSeconds(token);
+        if (jwtExpiry <= 0) {
+            return now + ttlNanos;
+        }
+        var remaining = TimeUnit.MILLISECONDS.toNanos(TimeUnit.SECONDS.toMillis(jwtExpiry) - System.currentTimeMillis());
+        return now + Math.min(ttlNanos, remaining);
+    }
+
+    /** The {@code exp} claim of a JWT, or 0 when the token is not a JWT or has none */
+    static long jwtExpiryEpochSeconds(String token) {
+        var parts = token.split("\\.");
+        if (parts.length != 3) {
+            return 0;
+        }
+        try {
+            var payload = new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8);
+            return Serialization.readTree(payload).path("exp").asLong(0);
+        } catch (IllegalArgumentException | JsonProcessingException e) {
+            return 0;
+        }
+    }
+
+    /** Shrinks the cache to 90% of its limit, so a full cache is not swept again on every login */
+    private void evictIfFull(long now) {
+        if (tokens.size() <= maxEntries) {
+            return;
+        }
+        tokens.entrySet().removeIf(entry -> entry.getValue().isDone() && !usable(entry.getValue(), now));
+        var target = maxEntries * 9 / 10;
+        if (tokens.size() <= target) {
+            return;
+        }
+        var completed = new ArrayList<Map.Entry<String, CompletableFuture<Token>>>();
+        tokens.forEach((username, token) -> {
+            if (token.isDone()) {
+                completed.add(Map.entry(username, token));
+            }
+        });
+        completed.sort(Comparator.comparingLong(entry -> entry.getValue().join().expiresAt()));
+        for (int i = 0; i < completed.size() && tokens.size() > target; i++) {
+            tokens.remove(completed.get(i).getKey(), completed.get(i).getValue());
+        }
+    }
+
+    private record Token(String value, long expiresAt) {}
+}
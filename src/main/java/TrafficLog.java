@@ -0,0 +1,471 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Binary log of captured traffic: every request (method, path, headers, body) with its response (status,
+ * body, latency) and when it started relative to the start of the capture. Written by {@link Writer} while a
+ * run is going on and read back by {@link TrafficReplay}.
+ *
+ * The file is a header (magic, version, capture start in epoch milliseconds) followed by records in the
+ * order the requests started. Each record is its length as an int and then: start offset and latency in
+ * nanoseconds as longs, status as a short (0 = no response), method and path as strings, a short header
+ * count and that many name/value string pairs, the request body as bytes, then the response body and the
+ * transport error as strings. Strings are an int byte count and UTF-8, bytes an int count; -1 means null.
+ */
+public class TrafficLog {
+    private static final int MAGIC = 0x46425452;   // "FBTR"
+    private static final short VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 2 + 8;
+
+    /** One captured request and what it got back */
+    public static class Entry {
+        public long offsetNanos;
+        public long latencyNanos;
+        public int statusCode;
+        public String method;
+        public String path;
+        public List<String> headers = new ArrayList<>();    // name, value, name, value...
+        public byte[] requestBody;
+        public String responseBody;                          // null when it never came or was over BodyCopy.LIMIT
+        public String error;
+
+        public String endpoint() {
+            return LatencyRecorder.endpointOf(URI.create("/" + path));
+        }
+    }
+
+    /**
+     * Appends captured requests to a file from one background thread. Request threads only hand over
+     * references; the writer encodes them, puts them back in start order and writes them in batches through
+     * a direct buffer. Out-of-order completions wait in memory until every earlier request has finished,
+     * so that is bounded by the requests in flight.
+     */
+    public static class Writer implements Closeable {
+        private static final Logger logger = LoggerFactory.getLogger(Writer.class);
+        private static final int QUEUE_CAPACITY = 65536;
+        private static final int BATCH = 1024;
+        private static final int BUFFER_BYTES = 256 * 1024;
+        private static final Captured STOP = new Captured(-1, null, 0, 0, null, null, null);
+        private final Path file;
+        private final FileChannel channel;
+        private final long startNanos = System.nanoTime();
+        private final AtomicLong sequence = new AtomicLong();
+        private final BlockingQueue<Captured> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+        private final PriorityQueue<Captured> waiting = new PriorityQueue<>((a, b) -> Long.compare(a.sequence, b.sequence));
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        private final ByteArrayOutputStream record = new ByteArrayOutputStream(4096);
+        private final DataOutputStream out = new DataOutputStream(record);
+        private final Thread thread;
+        private long nextSequence;
+        private long written;
+        private volatile boolean closed;
+
+        public Writer(Path file) throws IOException {
+            this.file = file;
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            buffer.putInt(MAGIC).putShort(VERSION).putLong(System.currentTimeMillis());
+            this.thread = ThreadMode.PLATFORM.threadFactory("traffic-capture-").newThread(this::drain);
+            thread.start();
+            logger.info("Capturing traffic to " + file.toAbsolutePath());
+        }
+
+        /** Called when a request is sent; the number orders the records in the file */
+        public long begin() {
+            return sequence.getAndIncrement();
+        }
+
+        /** Called once the request finished; blocks only when the writer has fallen {@value #QUEUE_CAPACITY} records behind */
+        public void finished(long sequence, HttpRequest request, long startNanos, long latencyNanos,
+                             HttpResponse<?> response, BodyCopy body, Throwable error) {
+            if (closed) {
+                return;
+            }
+            try {
+                queue.put(new Captured(sequence, request, startNanos - this.startNanos, latencyNanos, response, body, error));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                queue.put(STOP);
+                thread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            channel.close();
+            logger.info("Captured " + written + " requests to " + file.toAbsolutePath());
+        }
+
+        /** Not interrupted to stop: an interrupt during a write would close the channel */
+        private void drain() {
+            var batch = new ArrayList<Captured>(BATCH);
+            try {
+                var stopping = false;
+                while (!stopping) {
+                    batch.add(queue.take());
+                    queue.drainTo(batch, BATCH - batch.size());
+                    for (var captured : batch) {
+                        if (captured == STOP) {
+                            stopping = true;
+                        } else {
+                            waiting.add(captured);
+                        }
+                    }
+                    batch.clear();
+                    while (!waiting.isEmpty() && waiting.peek().sequence == nextSequence) {
+                        write(waiting.poll());
+                        nextSequence++;
+                    }
+                    flush();
+                }
+                // requests still unanswered at shutdown leave gaps; keep what did finish, in order
+                while (!waiting.isEmpty()) {
+                    write(waiting.poll());
+                }
+                flush();
+            } catch (InterruptedException e) {
+                logger.warn("Traffic capture interrupted, " + waiting.size() + " records not written");
+            } catch (IOException e) {
+                closed = true;
+                logger.error("Traffic capture stopped, could not write " + file + ": " + e.getMessage());
+            }
+        }
+
+        private void write(Captured captured) throws IOException {
+            record.reset();
+            out.writeInt(0);
+            out.writeLong(captured.offsetNanos);
+            out.writeLong(captured.latencyNanos);
+            out.writeShort(captured.response == null ? LatencyRecorder.NO_RESPONSE : captured.response.statusCode());
+            var request = captured.request;
+            writeString(request.method());
+            writeString(pathOf(request.uri()));
+            var headers = request.headers().map();
+            out.writeShort(headers.values().stream().mapToInt(List::size).sum());
+            for (var header : headers.entrySet()) {
+                for (var value : header.getValue()) {
+                    writeString(header.getKey());
+                    writeString(value);
+                }
+            }
+            writeBytes(bodyOf(request));
+            writeString(captured.response == null ? null
+                    : captured.response.body() instanceof String body ? body
+                    : captured.body == null ? null : captured.body.text());
+            writeString(captured.error == null ? null : errorOf(captured.error));
+
+            var bytes = record.toByteArray();
+            ByteBuffer.wrap(bytes).putInt(0, bytes.length - 4);
+            if (buffer.remaining() < bytes.length) {
+                flush();
+            }
+            if (bytes.length > buffer.capacity()) {
+                writeFully(ByteBuffer.wrap(bytes));
+            } else {
+                buffer.put(bytes);
+            }
+            written++;
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            writeFully(buffer);
+            buffer.clear();
+        }
+
+        private void writeFully(ByteBuffer bytes) throws IOException {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+
+        private void writeString(String value) throws IOException {
+            writeBytes(value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private void writeBytes(byte[] value) throws IOException {
+            if (value == null) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(value.length);
+                out.write(value);
+            }
+        }
+
+        private static String pathOf(URI uri) {
+            var path = uri.getRawPath() == null ? "" : uri.getRawPath();
+            path = path.startsWith("/") ? path.substring(1) : path;
+            return uri.getRawQuery() == null ? path : path + "?" + uri.getRawQuery();
+        }
+
+        private static String errorOf(Throwable error) {
+            var cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            return cause.toString();
+        }
+
+        /** The request body; the byte array and string publishers deliver it as soon as it is asked for */
+        private static byte[] bodyOf(HttpRequest request) {
+            var publisher = request.bodyPublisher().orElse(null);
+            if (publisher == null || publisher.contentLength() == 0) {
+                return null;
+            }
+            var body = new CompletableFuture<byte[]>();
+            publisher.subscribe(new Flow.Subscriber<>() {
+                private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    subscription.request(Long.MAX_VALUE);
+                }
+
+                @Override
+                public void onNext(ByteBuffer item) {
+                    var chunk = new byte[item.remaining()];
+                    item.get(chunk);
+                    bytes.writeBytes(chunk);
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    body.completeExceptionally(throwable);
+                }
+
+                @Override
+                public void onComplete() {
+                    body.complete(bytes.toByteArray());
+                }
+            });
+            try {
+                return body.get(1, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                return null;
+            }
+        }
+    }
+
+    private record Captured(long sequence, HttpRequest request, long offsetNanos, long latencyNanos,
+                            HttpResponse<?> response, BodyCopy body, Throwable error) {
+    }
+
+    /**
+     * Copy of a response body taken as it streams past the body handler, for responses that are not read
+     * into a String, e.g. with streaming validation. Bodies over {@link #LIMIT} bytes are not kept.
+     */
+    public static class BodyCopy {
+        static final int LIMIT = 64 * 1024;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        private boolean overLimit;
+
+        /** {@code handler} with this copy taking the bytes it reads */
+        public <T> HttpResponse.BodyHandler<T> copying(HttpResponse.BodyHandler<T> handler) {
+            return info -> new Tee<>(handler.apply(info));
+        }
+
+        /** The body as UTF-8, or null when it was over the limit; only read once the response has finished */
+        String text() {
+            return overLimit ? null : bytes.toString(StandardCharsets.UTF_8);
+        }
+
+        private void copy(List<ByteBuffer> buffers) {
+            for (var buffer : buffers) {
+                if (overLimit || bytes.size() + buffer.remaining() > LIMIT) {
+                    overLimit = true;
+                    return;
+                }
+                var chunk = new byte[buffer.remaining()];
+                buffer.duplicate().get(chunk);
+                bytes.writeBytes(chunk);
+            }
+        }
+
+        /** Hands every chunk to the real subscriber after copying it; the Flow rules keep onNext calls in order */
+        private class Tee<T> implements HttpResponse.BodySubscriber<T> {
+            private final HttpResponse.BodySubscriber<T> target;
+
+            Tee(HttpResponse.BodySubscriber<T> target) {
+                this.target = target;
+            }
+
+            @Override
+            public CompletionStage<T> getBody() {
+                return target.getBody();
+            }
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                target.onSubscribe(subscription);
+            }
+
+            @Override
+            public void onNext(List<ByteBuffer> item) {
+                copy(item);
+                target.onNext(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                target.onError(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                target.onComplete();
+            }
+        }
+    }
+
+    /**
+     * Records of a log file in order, memory-mapped a window at a time. A window starts at the first record
+     * not yet read, so only the record being decoded and the current window are held.
+     */
+    public static class Reader implements Iterator<Entry>, Closeable {
+        private static final int WINDOW_BYTES = 64 * 1024 * 1024;
+        private final Path file;
+        private final FileChannel channel;
+        private final long size;
+        private final long startedAtMillis;
+        private MappedByteBuffer window;
+        private long windowStart;
+        private long position;
+
+        public Reader(Path file) throws IOException {
+            this.file = file;
+            this.channel = FileChannel.open(file);
+            this.size = channel.size();
+            map(0, HEADER_BYTES);
+            if (size < HEADER_BYTES || window.getInt(0) != MAGIC) {
+                channel.close();
+                throw new IOException(file + " is not a traffic capture");
+            }
+            if (window.getShort(4) != VERSION) {
+                channel.close();
+                throw new IOException(file + " is version " + window.getShort(4) + " of the capture format, expected " + VERSION);
+            }
+            this.startedAtMillis = window.getLong(6);
+            this.position = HEADER_BYTES;
+        }
+
+        /** When the capture started, in epoch milliseconds */
+        public long startedAtMillis() {
+            return startedAtMillis;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return position + 4 <= size;
+        }
+
+        @Override
+        public Entry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            try {
+                var length = getInt(position);
+                if (length < 0 || position + 4 + length > size) {
+                    throw new IOException("Truncated record at byte " + position);
+                }
+                var record = slice(position + 4, length);
+                position += 4 + length;
+                return decode(record);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read " + file, e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            window = null;
+            channel.close();
+        }
+
+        private int getInt(long offset) throws IOException {
+            return slice(offset, 4).getInt();
+        }
+
+        /** {@code length} bytes at {@code offset}, remapping when they reach past the current window */
+        private ByteBuffer slice(long offset, int length) throws IOException {
+            if (window == null || offset < windowStart || offset + length > windowStart + window.limit()) {
+                map(offset, Math.max(length, (int) Math.min(WINDOW_BYTES, size - offset)));
+            }
+            return window.slice((int) (offset - windowStart), length);
+        }
+
+        private void map(long start, long length) throws IOException {
+            windowStart = start;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(length, size - start));
+        }
+
+        private static Entry decode(ByteBuffer in) {
+            var entry = new Entry();
+            entry.offsetNanos = in.getLong();
+            entry.latencyNanos = in.getLong();
+            entry.statusCode = in.getShort();
+            entry.method = string(in);
+            entry.path = string(in);
+            var headers = in.getShort();
+            for (int i = 0; i < headers * 2; i++) {
+                entry.headers.add(string(in));
+            }
+            entry.requestBody = bytes(in);
+            entry.responseBody = string(in);
+            entry.error = string(in);
+            return entry;
+        }
+
+        private static String string(ByteBuffer in) {
+            var bytes = bytes(in);
+            return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private static byte[] bytes(ByteBuffer in) {
+            var length = in.getInt();
+            if (length < 0) {
+                return null;
+            }
+            var bytes = new byte[length];
+            in.get(bytes);
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,332 @@
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends the requests of a {@link TrafficLog} capture again, against the configured host or targets, and
+ * compares every response with the recorded one: the status must match, and so must JSON bodies apart from
+ * the {@code ignoreFields} that differ from run to run. Requests start at their recorded offsets divided by
+ * the speed, or back to back at {@code max}, but never before the replayed responses of all requests that
+ * had finished when they started in the capture: a login still follows its registration at any speed. At
+ * most {@code client.maxConcurrentRequests} are in flight, and the capture is read as it is replayed, so a
+ * long capture does not need to fit in memory. The report puts recorded and replayed latency per endpoint
+ * side by side.
+ *
+ * Values of the ignored fields are correlated: once a replayed response has answered, say, an
+ * {@code access-token} or {@code id} other than the recorded one, later requests get the new value wherever
+ * the old one appears as a whole header value or path segment, so logins and user ids carry over.
+ *
+ * Run with {@code mvn compile exec:java -Dexec.mainClass=TrafficReplay [-Dexec.args="<capture> <speed>"]}.
+ * Replaying registrations only gets the recorded answers from a service whose data is in the state the
+ * capture started from.
+ */
+public class TrafficReplay {
+    private static final Logger logger = LoggerFactory.getLogger(TrafficReplay.class);
+    private static final int MAX_MISMATCH_SAMPLES = 20;
+    private static final Set<String> CLIENT_HEADERS = Set.of("connection", "content-length", "host");
+    private final Config config;
+    private final Config.Capture settings;
+    private final double speed;
+    private final HttpClientManager clientManager;
+    private final Endpoints endpoints;
+    private final Semaphore slots;
+    private final LatencyRecorder recorded = new LatencyRecorder();
+    private final Recorder lag = new Recorder(3);
+    private final LongAdder statusMismatches = new LongAdder();
+    private final LongAdder bodyMismatches = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final List<String> mismatches = new ArrayList<>();
+    private final Map<String, String> replacements = new ConcurrentHashMap<>();
+    private final PriorityQueue<TrafficLog.Entry> outstanding =
+            new PriorityQueue<>(Comparator.comparingLong(entry -> entry.offsetNanos + entry.latencyNanos));
+
+    /** {@code speed} is a factor such as 1 or 2.5, or {@code max} */
+    public TrafficReplay(Config config, String speed) {
+        config = config.with(Map.of("capture.enabled", false));
+        this.config = config;
+        this.settings = config.capture;
+        this.speed = "max".equalsIgnoreCase(speed.trim()) ? 0 : Double.parseDouble(speed.trim());
+        if (this.speed < 0 || Double.isNaN(this.speed)) {
+            throw new IllegalArgumentException("Replay speed must be a positive factor or max, got " + speed);
+        }
+        this.endpoints = new Endpoints(config);
+        this.clientManager = new HttpClientManager(config, endpoints);
+        this.slots = new Semaphore(config.client.maxConcurrentRequests);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        var config = YamlReader.config();
+
+        var capture = Path.of(args.length > 0 ? args[0] : config.capture.file);
+        var replay = new TrafficReplay(config, args.length > 1 ? args[1] : config.capture.replaySpeed);
+        Report report;
+        try {
+            report = replay.run(capture);
+        } finally {
+            replay.clientManager.shutdown();
+        }
+        var file = Path.of(config.capture.replayReportFile);
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        Serialization.mapper().writerWithDefaultPrettyPrinter().writeValue(file.toFile(), report);
+        logger.info("Replay report written to " + file.toAbsolutePath());
+        if (report.statusMismatches > 0) {
+            throw new IllegalStateException(report.statusMismatches + " replayed requests got a different status than recorded, or none");
+        }
+    }
+
+    public Report run(Path capture) throws IOException, InterruptedException {
+        logger.info("Replaying " + capture.toAbsolutePath() + " at " + (speed == 0 ? "maximum speed" : speed + "x")
+                + " against " + endpoints.targets());
+        clientManager.transport();
+        var requests = 0L;
+        var lastOffset = 0L;
+        var start = System.nanoTime();
+        try (var reader = new TrafficLog.Reader(capture)) {
+            while (reader.hasNext()) {
+                var entry = reader.next();
+                var due = speed == 0 ? System.nanoTime() : start + (long) (entry.offsetNanos / speed);
+                for (var wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+                    LockSupport.parkNanos(wait);
+                }
+                slots.acquire();
+                awaitPredecessors(entry);
+                lag.recordValue(Math.max(0, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - due)));
+                replay(entry);
+                requests++;
+                lastOffset = entry.offsetNanos;
+            }
+        }
+        slots.acquire(config.client.maxConcurrentRequests);
+        slots.release(config.client.maxConcurrentRequests);
+        var elapsed = System.nanoTime() - start;
+
+        var report = report(requests, lastOffset, elapsed);
+        logger.info("Replayed " + requests + " requests in " + String.format("%.1f", report.durationSeconds) + " s ("
+                + String.format("%.1f", report.recordedDurationSeconds) + " s recorded): " + report.statusMismatches
+                + " status mismatches, " + report.bodyMismatches + " body mismatches, " + report.failed + " failed");
+        for (var endpoint : report.endpoints) {
+            logger.info("Replay " + endpoint);
+        }
+        return report;
+    }
+
+    private void replay(TrafficLog.Entry entry) {
+        recorded.record(entry.endpoint(), entry.statusCode, entry.latencyNanos);
+        HttpRequest request;
+        try {
+            request = request(entry);
+        } catch (IllegalArgumentException e) {
+            failed.increment();
+            mismatch(entry, "could not be rebuilt: " + e.getMessage());
+            synchronized (outstanding) {
+                outstanding.remove(entry);
+                outstanding.notifyAll();
+            }
+            slots.release();
+            return;
+        }
+        clientManager.sendAsync(request).whenComplete((response, error) -> {
+            try {
+                compare(entry, response, error);
+            } finally {
+                synchronized (outstanding) {
+                    outstanding.remove(entry);
+                    outstanding.notifyAll();
+                }
+                slots.release();
+            }
+        });
+    }
+
+    /** Waits for the replies to every request that had its reply before {@code entry} was sent in the capture */
+    private void awaitPredecessors(TrafficLog.Entry entry) throws InterruptedException {
+        synchronized (outstanding) {
+            while (!outstanding.isEmpty()
+                    && outstanding.peek().offsetNanos + outstanding.peek().latencyNanos <= entry.offsetNanos) {
+                outstanding.wait();
+            }
+            outstanding.add(entry);
+        }
+    }
+
+    private HttpRequest request(TrafficLog.Entry entry) {
+        var builder = clientManager.newRequest(endpoints.next().resolve(replacePathSegments(entry.path)))
+                .method(entry.method, entry.requestBody == null ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofByteArray(entry.requestBody));
+        for (int i = 0; i < entry.headers.size(); i += 2) {
+            if (!CLIENT_HEADERS.contains(entry.headers.get(i).toLowerCase())) {
+                var value = entry.headers.get(i + 1);
+                builder.header(entry.headers.get(i), replacements.getOrDefault(value, value));
+            }
+        }
+        return builder.build();
+    }
+
+    private void compare(TrafficLog.Entry entry, HttpResponse<String> response, Throwable error) {
+        if (response == null) {
+            failed.increment();
+            if (entry.statusCode != LatencyRecorder.NO_RESPONSE) {
+                statusMismatches.increment();
+                mismatch(entry, "failed: " + error + ", recorded " + entry.statusCode);
+            }
+            return;
+        }
+        if (response.statusCode() != entry.statusCode) {
+            statusMismatches.increment();
+            mismatch(entry, "status " + response.statusCode() + ", recorded " + entry.statusCode);
+        } else if (entry.responseBody != null) {
+            correlate(entry.responseBody, response.body());
+            if (!sameBody(entry.responseBody, response.body())) {
+                bodyMismatches.increment();
+                mismatch(entry, "body " + response.body().trim() + ", recorded " + entry.responseBody.trim());
+            }
+        }
+    }
+
+    private String replacePathSegments(String path) {
+        if (replacements.isEmpty()) {
+            return path;
+        }
+        var segments = path.split("/", -1);
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = replacements.getOrDefault(segments[i], segments[i]);
+        }
+        return String.join("/", segments);
+    }
+
+    /** Remembers which replayed value stands for which recorded one, for the ignored fields of both bodies */
+    private void correlate(String recorded, String replayed) {
+        try {
+            var before = Serialization.readTree(recorded);
+            var after = Serialization.readTree(replayed);
+            for (var field : settings.ignoreFields) {
+                var old = before.path(field);
+                var now = after.path(field);
+                if (old.isValueNode() && now.isValueNode() && !old.asText().equals(now.asText())) {
+                    replacements.put(old.asText(), now.asText());
+                }
+            }
+        } catch (JsonProcessingException e) {
+            // not JSON, nothing to correlate
+        }
+    }
+
+    /** JSON bodies compare as trees without the ignored fields, anything else as trimmed text */
+    private boolean sameBody(String recorded, String replayed) {
+        try {
+            return Objects.equals(withoutIgnored(Serialization.readTree(recorded)), withoutIgnored(Serialization.readTree(replayed)));
+        } catch (JsonProcessingException e) {
+            return recorded.trim().equals(replayed.trim());
+        }
+    }
+
+    private JsonNode withoutIgnored(JsonNode node) {
+        if (node instanceof ObjectNode object) {
+            object.remove(settings.ignoreFields);
+            object.forEach(this::withoutIgnored);
+        } else if (node != null && node.isArray()) {
+            node.forEach(this::withoutIgnored);
+        }
+        return node;
+    }
+
+    private void mismatch(TrafficLog.Entry entry, String what) {
+        logger.debug("{} {} {}", entry.method, entry.path, what);
+        synchronized (mismatches) {
+            if (mismatches.size() < MAX_MISMATCH_SAMPLES) {
+                mismatches.add(entry.method + " " + entry.path + " " + what);
+            }
+        }
+    }
+
+    private Report report(long requests, long lastOffsetNanos, long elapsedNanos) {
+        var report = new Report();
+        report.generatedAt = Instant.now().toString();
+        report.speed = speed == 0 ? "max" : String.valueOf(speed);
+        report.requests = requests;
+        report.statusMismatches = statusMismatches.sum();
+        report.bodyMismatches = bodyMismatches.sum();
+        report.failed = failed.sum();
+        report.durationSeconds = elapsedNanos / 1e9;
+        report.recordedDurationSeconds = lastOffsetNanos / 1e9;
+        var lagHistogram = lag.getIntervalHistogram();
+        report.p99StartLagMs = lagHistogram.getValueAtPercentile(99) / 1000.0;
+        report.maxStartLagMs = lagHistogram.getMaxValue() / 1000.0;
+        var names = new TreeSet<String>();
+        recorded.entries().forEach(entry -> names.add(entry.endpoint));
+        for (var name : names) {
+            report.endpoints.add(new EndpointComparison(name, recorded.histogram(name), clientManager.latencyRecorder().histogram(name)));
+        }
+        synchronized (mismatches) {
+            report.mismatches = new ArrayList<>(mismatches);
+        }
+        return report;
+    }
+
+    /** Recorded against replayed latency of one endpoint */
+    public static class EndpointComparison {
+        public String endpoint;
+        public long requests;
+        public double recordedP50Ms;
+        public double recordedP99Ms;
+        public double replayedP50Ms;
+        public double replayedP99Ms;
+
+        EndpointComparison(String endpoint, Histogram recorded, Histogram replayed) {
+            this.endpoint = endpoint;
+            this.requests = recorded.getTotalCount();
+            this.recordedP50Ms = recorded.getValueAtPercentile(50) / 1000.0;
+            this.recordedP99Ms = recorded.getValueAtPercentile(99) / 1000.0;
+            this.replayedP50Ms = replayed.getValueAtPercentile(50) / 1000.0;
+            this.replayedP99Ms = replayed.getValueAtPercentile(99) / 1000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d requests, p50 %.2f -> %.2f ms, p99 %.2f -> %.2f ms", endpoint, requests,
+                    recordedP50Ms, replayedP50Ms, recordedP99Ms, replayedP99Ms);
+        }
+    }
+
+    public static class Report {
+        public String generatedAt;
+        public String speed;
+        public long requests;
+        public long statusMismatches;
+        public long bodyMismatches;
+        public long failed;
+        public double durationSeconds;
+        public double recordedDurationSeconds;
+        public double p99StartLagMs;                // how late requests went out against their schedule, waits for
+                                                    // the replies they depend on included
+        public double maxStartLagMs;
+        public List<EndpointComparison> endpoints = new ArrayList<>();
+        public List<String> mismatches;
+    }
+}
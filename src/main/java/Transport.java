@@ -0,0 +1,68 @@
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * The engine under {@link HttpClientManager} that moves requests over the wire. Requests are built with the
+ * JDK's {@link HttpRequest} builder and answered with {@link HttpResponse}s whatever the engine, so body
+ * handlers and response checks are the same for all of them. {@code client.transport} picks the engine:
+ * {@code jdk} ({@link JdkTransport}), {@code nio} ({@link NioTransport}) or the class name of another
+ * implementation with a {@code (Config.Client, ThreadMode)} constructor.
+ */
+public interface Transport {
+
+    static Transport create(Config.Client settings, ThreadMode threadMode) {
+        var name = settings.transport.trim();
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case "jdk":
+                return new JdkTransport(settings, threadMode);
+            case "nio":
+                return new NioTransport(settings, threadMode);
+            default:
+                try {
+                    return (Transport) Class.forName(name).getConstructor(Config.Client.class, ThreadMode.class)
+                            .newInstance(settings, threadMode);
+                } catch (ClassNotFoundException | NoSuchMethodException | InstantiationException | IllegalAccessException
+                         | InvocationTargetException | ClassCastException e) {
+                    throw new IllegalArgumentException("Unknown transport: " + name, e);
+                }
+        }
+    }
+
+    <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler);
+
+    /** Blocking send; engines without a blocking path of their own wait for {@link #sendAsync} */
+    default <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) throws IOException, InterruptedException {
+        try {
+            return sendAsync(request, bodyHandler).get();
+        } catch (ExecutionException e) {
+            var cause = e.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /** Where responses are completed, for the pool metrics; null when the engine does not say */
+    Executor executor();
+
+    /** Connections opened so far, or -1 when the engine does not see its connections */
+    default long connectionsOpened() {
+        return -1;
+    }
+
+    /** Closes idle connections and stops the engine's threads */
+    void close();
+}
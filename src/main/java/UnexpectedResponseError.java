@@ -0,0 +1,15 @@
+/** Assertion failure for a response with the wrong status, keeping the status and body for error reporting */
+public class UnexpectedResponseError extends AssertionError {
+    private final int statusCode;
+    private final String body;
+
+    public UnexpectedResponseError(String stage, int expectedStatus, int statusCode, String body) {
+        super(stage + " expected response " + expectedStatus + " but was " + statusCode + ": " + body);
+        this.statusCode = statusCode;
+        this.body = body;
+    }
+
+    public int statusCode() { return statusCode; }
+
+    public String body() { return body; }
+}
@@ -0,0 +1,24 @@
+/** A test user owned by one scenario, together with the id and token the API hands back for it */
+public class UserFixture {
+    private final RegistrationRequest registration;
+    private volatile Integer userId;
+    private volatile String accessToken;
+
+    public UserFixture(RegistrationRequest registration) {
+        this.registration = registration;
+    }
+
+    public RegistrationRequest getRegistration() { return registration; }
+
+    public String getUsername() { return registration.getUsername(); }
+
+    public String getPassword() { return registration.getPassword(); }
+
+    public String getEmail() { return registration.getEmail(); }
+
+    public Integer getUserId() { return userId; }
+    public void setUserId(Integer userId) { this.userId = userId; }
+
+    public String getAccessToken() { return accessToken; }
+    public void setAccessToken(String accessToken) { this.accessToken = accessToken; }
+}
@@ -0,0 +1,108 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Registry of every user the run created, with bulk provisioning and cleanup. Both run at most
+ * {@code provisionParallelism} / {@code cleanupParallelism} requests at a time, so a pool of thousands of
+ * users is set up quickly without flooding the service. The API has no delete endpoint yet, so unless
+ * {@code fixtures.deletePath} is configured cleanup only forgets the users locally.
+ */
+public class UserFixtureManager {
+    private static final Logger logger = LoggerFactory.getLogger(UserFixtureManager.class);
+    /** Stand-in for a missing delete endpoint: the user is only dropped from the registry */
+    public static final Function<UserFixture, CompletableFuture<?>> FORGET = user -> CompletableFuture.completedFuture(null);
+    private final ConcurrentHashMap<Integer, UserFixture> registry = new ConcurrentHashMap<>();
+    private final Config.Fixtures settings;
+
+    public UserFixtureManager(Config.Fixtures settings) {
+        this.settings = settings;
+    }
+
+    public void track(UserFixture user) {
+        if (user.getUserId() != null) {
+            registry.put(user.getUserId(), user);
+        }
+    }
+
+    public int size() {
+        return registry.size();
+    }
+
+    /** Creates {@code count} users with {@code provision}; users that fail are logged and left out */
+    public List<UserFixture> provision(int count, Supplier<UserFixture> users,
+                                       Function<UserFixture, CompletableFuture<UserFixture>> provision) throws InterruptedException {
+        var start = System.nanoTime();
+        var results = forEach(count, settings.provisionParallelism, i -> provision.apply(users.get()));
+        var provisioned = new ArrayList<UserFixture>(count);
+        for (var result : results) {
+            var user = outcome(result, "Skipping user that could not be provisioned: ");
+            if (user != null) {
+                provisioned.add(user);
+            }
+        }
+        logger.info("Provisioned " + provisioned.size() + " of " + count + " users in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+        return provisioned;
+    }
+
+    /** Deletes every tracked user with {@code delete}; the ones that fail stay in the registry */
+    public int cleanup(Function<UserFixture, CompletableFuture<?>> delete) throws InterruptedException {
+        var users = new ArrayList<>(registry.values());
+        var results = forEach(users.size(), settings.cleanupParallelism, i -> delete.apply(users.get(i)));
+        var deleted = 0;
+        for (int i = 0; i < users.size(); i++) {
+            var user = users.get(i);
+            if (results.get(i).isCompletedExceptionally()) {
+                outcome(results.get(i), "Could not delete user " + user.getUserId() + ": ");
+            } else {
+                registry.remove(user.getUserId(), user);
+                deleted++;
+            }
+        }
+        logger.info((delete == FORGET ? "Released " : "Deleted ") + deleted + " of " + users.size() + " test users");
+        return deleted;
+    }
+
+    private static <T> List<CompletableFuture<T>> forEach(int count, int parallelism, Function<Integer, CompletableFuture<T>> task)
+            throws InterruptedException {
+        var limiter = new RequestLimiter(Math.max(1, parallelism));
+        var results = new ArrayList<CompletableFuture<T>>(count);
+        for (int i = 0; i < count; i++) {
+            var index = i;
+            results.add(limiter.acquireAsync()
+                    .thenCompose(ignored -> {
+                        try {
+                            return task.apply(index);
+                        } catch (RuntimeException e) {
+                            return CompletableFuture.failedFuture(e);
+                        }
+                    })
+                    .whenComplete((result, error) -> limiter.release()));
+        }
+        try {
+            CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).get();
+        } catch (ExecutionException ignored) {
+            // failures are reported per result
+        }
+        return results;
+    }
+
+    private static <T> T outcome(CompletableFuture<T> result, String failure) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            var cause = e.getCause() == null ? e : e.getCause();
+            logger.warn(failure + cause.getMessage());
+            return null;
+        }
+    }
+}
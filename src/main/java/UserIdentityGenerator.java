@@ -0,0 +1,313 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Unique test users that satisfy the API rules. A username is exactly 8 base-36 characters: the node
+ * character from the configuration, a 3 character run number and a 4 character counter. A run is claimed on
+ * the service itself by registering its counter 0 user, the run's marker: a run whose marker is already
+ * registered was used before, by this machine or any other, and the next one is tried. So uniqueness holds
+ * without local state, on fresh CI agents and containers too. The sequence file only says where to start
+ * looking, the run after the one this machine claimed last; without it the search starts at a run derived
+ * from the clock. Run numbers wrap around, so a node runs out only when all 46656 of its markers exist.
+ * Within a run the counter is a plain AtomicLong, good for 1.6 million users without any locking.
+ * Distributed load runs split the counters of one run into a disjoint range per worker, see {@link #forRange}.
+ *
+ * Pre-generate identities for long soak runs with
+ * {@code mvn compile exec:java -Dexec.mainClass=UserIdentityGenerator -Dexec.args="<count> <file>"}.
+ */
+public class UserIdentityGenerator {
+    private static final Logger logger = LoggerFactory.getLogger(UserIdentityGenerator.class);
+    public static final String PASSWORD = "Password1@";
+    public static final String EMAIL_DOMAIN = "@mail.com";
+    public static final String CSV_HEADER = "username,password,email,firstName,lastName,middleName";
+    private static final int RADIX = 36;
+    private static final int RUN_DIGITS = 3;
+    private static final int COUNTER_DIGITS = 4;
+    private static final int RUNS = pow(RADIX, RUN_DIGITS);
+    private static final int MAX_CLAIM_ATTEMPTS = 100;
+    static final long USERS_PER_RUN = pow(RADIX, COUNTER_DIGITS);
+    static final long FIRST_COUNTER = 1;                // counter 0 is the run's marker
+    private final char node;
+    private final int run;
+    private final long first;
+    private final long limit;
+    private final AtomicLong counter;
+
+    public UserIdentityGenerator(char node, int run) {
+        this(node, run, FIRST_COUNTER, USERS_PER_RUN);
+    }
+
+    private UserIdentityGenerator(char node, int run, long first, long limit) {
+        if (Character.digit(node, RADIX) < 0 || Character.isUpperCase(node)) {
+            throw new IllegalArgumentException("Node must be one of 0-9 or a-z: " + node);
+        }
+        this.node = node;
+        if (first < 0 || limit > USERS_PER_RUN || first >= limit) {
+            throw new IllegalArgumentException("Counter range " + first + "-" + limit + " is outside 0-" + USERS_PER_RUN);
+        }
+        if (run < 0 || run >= RUNS) {
+            throw new IllegalArgumentException("Run " + run + " is outside 0-" + (RUNS - 1));
+        }
+        this.run = run;
+        this.first = first;
+        this.limit = limit;
+        this.counter = new AtomicLong(first);
+    }
+
+    /** Generator for a new run, claimed on the service with {@code claim} */
+    public static UserIdentityGenerator forRun(Config.Identity settings, RunClaim claim) throws IOException {
+        return new UserIdentityGenerator(node(settings.node), claimRun(settings, claim));
+    }
+
+    /** Generator for counters {@code first} up to {@code limit} (exclusive) of a run reserved elsewhere */
+    public static UserIdentityGenerator forRange(char node, int run, long first, long limit) {
+        return new UserIdentityGenerator(node, run, first, limit);
+    }
+
+    /** Claims the first run from the sequence file's hint on whose marker the service still accepts */
+    public static int claimRun(Config.Identity settings, RunClaim claim) throws IOException {
+        var node = node(settings.node);
+        var sequenceFile = resolve(settings.runSequenceFile);
+        int start;
+        try {
+            start = nextRun(sequenceFile);
+        } catch (IOException e) {
+            start = (int) (System.currentTimeMillis() / 60_000 % RUNS);
+            logger.warn("Could not read " + sequenceFile + ", looking for a free run from " + start + ": " + e.getMessage());
+        }
+        for (int i = 0; i < MAX_CLAIM_ATTEMPTS; i++) {
+            var run = (start + i) % RUNS;
+            var marker = new UserIdentityGenerator(node, run, 0, 1).next("Run", "Marker", "User");
+            if (claim.claim(marker)) {
+                if (i > 0) {
+                    storeRun(sequenceFile, run);
+                }
+                logger.info("Claimed run " + run + " of node " + node + " with marker user " + marker.getUsername());
+                return run;
+            }
+            logger.info("Run " + run + " of node " + node + " was used before, its marker " + marker.getUsername() + " exists");
+        }
+        throw new IllegalStateException("Runs " + start + " to " + (start + MAX_CLAIM_ATTEMPTS - 1) % RUNS + " of node "
+                + node + " were all used before. Set another identity.node");
+    }
+
+    /** The node character of {@code identity.node} */
+    public static char node(String node) {
+        if (node == null || node.length() != 1) {
+            throw new IllegalArgumentException("identity.node must be one character of 0-9 or a-z, was '" + node + "'");
+        }
+        return node.charAt(0);
+    }
+
+    public String nextUsername() {
+        var n = counter.getAndIncrement();
+        if (n >= limit) {
+            throw new IllegalStateException("All " + (limit - first) + " usernames of run " + run + " from counter "
+                    + first + " are used");
+        }
+        var chars = new char[1 + RUN_DIGITS + COUNTER_DIGITS];
+        chars[0] = node;
+        writeDigits(chars, 1, RUN_DIGITS, run);
+        writeDigits(chars, 1 + RUN_DIGITS, COUNTER_DIGITS, n);
+        return new String(chars);
+    }
+
+    public RegistrationRequest next(String firstName, String lastName, String middleName) {
+        var username = nextUsername();
+        return new RegistrationRequest(username, PASSWORD, username + EMAIL_DOMAIN, firstName, lastName, middleName);
+    }
+
+    public long generated() {
+        return Math.min(counter.get(), limit) - first;
+    }
+
+    /** Writes {@code count} identities as CSV, to be replayed by a soak run instead of generated on the fly */
+    public void writeFile(Path file, long count, String firstName, String lastName, String middleName) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(CSV_HEADER);
+            writer.newLine();
+            for (long i = 0; i < count; i++) {
+                var request = next(firstName, lastName, middleName);
+                writer.write(String.join(",", request.getUsername(), request.getPassword(), request.getEmail(),
+                        request.getFirstName(), request.getLastName(), request.getMiddleName()));
+                writer.newLine();
+            }
+        }
+    }
+
+    /** Identities from a file written by {@link #writeFile}, read lazily line by line */
+    public static IdentityFile readFile(Path file) throws IOException {
+        return new IdentityFile(file);
+    }
+
+    /** Reads a file of identities; closes itself at the end, or on {@link #close()} when abandoned earlier */
+    public static final class IdentityFile implements Iterator<RegistrationRequest>, Closeable {
+        private final Path file;
+        private final BufferedReader reader;
+        private String line;
+
+        private IdentityFile(Path file) throws IOException {
+            this.file = file;
+            this.reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+            this.line = readLine(reader, true);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return line != null;
+        }
+
+        @Override
+        public RegistrationRequest next() {
+            if (line == null) {
+                throw new NoSuchElementException("No more identities in " + file);
+            }
+            var fields = line.split(",", -1);
+            line = readLine(reader, false);
+            return new RegistrationRequest(fields[0], fields[1], fields[2], fields[3], fields[4], fields[5]);
+        }
+
+        @Override
+        public void close() throws IOException {
+            line = null;
+            reader.close();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("Usage: UserIdentityGenerator <count> <file>");
+        }
+        var config = YamlReader.config();
+        var client = new HttpClientManager(config);
+        UserIdentityGenerator generator;
+        try {
+            generator = forRun(config.identity, RunClaim.over(client));
+        } finally {
+            client.shutdown();
+        }
+        var start = System.nanoTime();
+        generator.writeFile(Path.of(args[1]), Long.parseLong(args[0]), "Load", "Test", "User");
+        logger.info("Wrote " + generator.generated() + " identities of run " + generator.run + " to " + args[1]
+                + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    /** Registers a run's marker user on the service */
+    public interface RunClaim {
+        /** True when the service registered {@code marker}, false when it already existed */
+        boolean claim(RegistrationRequest marker) throws IOException;
+
+        /** Registers the marker with {@code client}'s transport, leaving it out of stats and latencies like a probe */
+        static RunClaim over(HttpClientManager client) {
+            return marker -> {
+                var request = client.newRequest(client.endpoints().next().register())
+                        .header("Content-type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(Serialization.toJson(marker)))
+                        .build();
+                HttpResponse<String> response;
+                try {
+                    response = client.transport().send(request, HttpResponse.BodyHandlers.ofString());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while claiming a run with " + marker.getUsername(), e);
+                }
+                if (response.statusCode() == 200) {
+                    return true;
+                }
+                if (response.statusCode() == 400 && response.body().contains("already exists")) {
+                    return false;
+                }
+                throw new IOException("Could not claim a run with " + marker.getUsername() + ", register answered "
+                        + response.statusCode() + ": " + response.body());
+            };
+        }
+    }
+
+    /**
+     * Increments the run number kept in the file, holding an exclusive lock so parallel JVMs start from distinct
+     * runs. A new file starts at a run derived from the clock rather than at 0, which earlier machines took.
+     */
+    static int nextRun(Path sequenceFile) throws IOException {
+        if (sequenceFile.getParent() != null) {
+            Files.createDirectories(sequenceFile.getParent());
+        }
+        try (var channel = FileChannel.open(sequenceFile,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+             var ignored = channel.lock()) {
+            var buffer = ByteBuffer.allocate(Integer.BYTES);
+            var run = channel.read(buffer, 0) == Integer.BYTES
+                    ? Math.floorMod(buffer.flip().getInt() + 1, RUNS)
+                    : (int) (System.currentTimeMillis() / 60_000 % RUNS);
+            channel.write(buffer.clear().putInt(run).flip(), 0);
+            channel.force(false);
+            return run;
+        }
+    }
+
+    /** Records the run claimed after the file's hint was taken, so the next search starts after it */
+    private static void storeRun(Path sequenceFile, int run) {
+        try (var channel = FileChannel.open(sequenceFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             var ignored = channel.lock()) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(run).flip(), 0);
+        } catch (IOException e) {
+            logger.warn("Could not record run " + run + " in " + sequenceFile + ": " + e.getMessage());
+        }
+    }
+
+    private static Path resolve(String path) {
+        if (path.startsWith("~/")) {
+            return Path.of(System.getProperty("user.home"), path.substring(2));
+        }
+        return Path.of(path);
+    }
+
+    private static void writeDigits(char[] chars, int offset, int digits, long value) {
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            chars[i] = Character.forDigit((int) (value % RADIX), RADIX);
+            value /= RADIX;
+        }
+    }
+
+    private static String readLine(BufferedReader reader, boolean skipHeader) {
+        try {
+            var line = reader.readLine();
+            if (skipHeader && CSV_HEADER.equals(line)) {
+                line = reader.readLine();
+            }
+            if (line == null) {
+                reader.close();
+            }
+            return line;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int pow(int base, int exponent) {
+        var result = 1;
+        for (int i = 0; i < exponent; i++) {
+            result *= base;
+        }
+        return result;
+    }
+}
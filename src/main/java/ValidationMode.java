@@ -0,0 +1,15 @@
+import java.util.Locale;
+
+/**
+ * How response bodies are checked. {@code TREE} reads the body into a String and a JsonNode tree, which is
+ * convenient for the functional suites; {@code STREAMING} checks the expected fields while the bytes arrive
+ * and is meant for load and soak runs, where per-request allocations show up as GC pauses in the latencies.
+ */
+public enum ValidationMode {
+    TREE,
+    STREAMING;
+
+    public static ValidationMode from(String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+}
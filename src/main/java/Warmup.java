@@ -0,0 +1,259 @@
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Unmeasured traffic before a run, so JIT compilation, class loading, DNS lookups and connection setup are
+ * over before its latency counts. The configured scenarios run in a closed loop of {@code concurrency} flows.
+ * After every {@code windowRequests} requests the window's p50 and p90 are compared with the previous
+ * window's; the warm-up ends once they moved less than {@code tolerance} for {@code stableWindows} windows in
+ * a row, or after {@code maxSeconds}. Its requests are not measured: see {@link HttpClientManager#measure}.
+ * <p>
+ * Login and get user warm up on a pool of {@code userPoolSize} users that is kept per target in
+ * {@code userDirectory}, so the same few users serve every run instead of each JVM registering new ones the
+ * service cannot delete. Stored users that can no longer log in are replaced. Against the stub the pool is
+ * registered anew, in memory only.
+ */
+public class Warmup extends BaseClass {
+    private static final Logger logger = LoggerFactory.getLogger(Warmup.class);
+    private final Config.Warmup settings;
+    private final ValidationMode validationMode;
+    private List<LoadScenario> scenarios;
+    private List<UserFixture> users = List.of();
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final CountDownLatch settled = new CountDownLatch(1);
+    private final Histogram window = new Histogram(3);
+    private volatile boolean stopped;
+    private int windowCompleted;
+    private int windowFailures;
+    private int windows;
+    private int stableInARow;
+    private double previousP50;
+    private double previousP90;
+    private Throwable lastError;
+    private String outcome;
+
+    /** {@code validationMode} should be the one the measured run uses, so its code paths get compiled */
+    public Warmup(Config.Warmup settings, ValidationMode validationMode) {
+        this.settings = settings;
+        this.validationMode = validationMode;
+        this.scenarios = settings.scenarios.stream().map(LoadScenario::from).toList();
+    }
+
+    /** Warms up unless it is disabled, with measuring off until it is over */
+    public void run() throws InterruptedException {
+        if (!settings.enabled || scenarios.isEmpty()) {
+            return;
+        }
+        measure(false);
+        try {
+            warmUp();
+        } finally {
+            measure(true);
+        }
+    }
+
+    private void warmUp() throws InterruptedException {
+        if (scenarios.stream().anyMatch(LoadScenario::needsUserPool)) {
+            users = provisionUsers();
+            if (users.isEmpty()) {
+                scenarios = scenarios.stream().filter(scenario -> !scenario.needsUserPool()).toList();
+                logger.warn("No warm-up users, warming up with " + scenarios + " only");
+                if (scenarios.isEmpty()) {
+                    return;
+                }
+            }
+        }
+        logger.info("Warming up with " + scenarios + ", " + settings.concurrency + " flows at a time, for at most "
+                + settings.maxSeconds + " s");
+        var start = System.nanoTime();
+        for (int i = 0; i < settings.concurrency; i++) {
+            next();
+        }
+        if (!settled.await(settings.maxSeconds, TimeUnit.SECONDS)) {
+            synchronized (this) {
+                outcome = "did not settle in " + settings.maxSeconds + " s";
+            }
+        }
+        stopped = true;
+        var drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(settings.maxSeconds);
+        while (outstanding.get() > 0 && System.nanoTime() < drainDeadline) {
+            Thread.sleep(10);
+        }
+        if (outstanding.get() > 0) {
+            logger.warn(outstanding.get() + " warm-up requests are still unanswered, measuring anyway");
+        }
+        synchronized (this) {
+            logger.info("Warm-up " + outcome + " after " + started.get() + " requests in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms"
+                    + (windows > 0 ? String.format(", last window p50 %.2f ms, p90 %.2f ms", previousP50, previousP90) : "")
+                    + "; its latency is not part of the run");
+        }
+    }
+
+    /** The stored users of this target that still log in, topped up with new ones to {@code userPoolSize} */
+    private List<UserFixture> provisionUsers() throws InterruptedException {
+        var file = target().equals(RunHistory.STUB_TARGET) ? null
+                : userDirectory().resolve(target().replaceAll("[^A-Za-z0-9._-]", "_") + ".json");
+        var pool = new ArrayList<UserFixture>();
+        var changed = false;
+        for (var user : readUsers(file)) {
+            if (pool.size() >= settings.userPoolSize) {
+                break;
+            }
+            try {
+                pool.add(loginAsync(user).get());
+            } catch (ExecutionException e) {
+                if (!(e.getCause() instanceof UnexpectedResponseError)) {
+                    logger.warn("Could not check warm-up user " + user.getUsername() + ", warming up with " + pool.size()
+                            + " users and keeping the stored ones: " + e.getCause());
+                    return pool;
+                }
+                logger.info("Replacing warm-up user " + user.getUsername() + ": " + e.getCause().getMessage());
+                changed = true;
+            }
+        }
+        while (pool.size() < settings.userPoolSize) {
+            try {
+                pool.add(registerAsync(newUser("Warmup", "Test", "User")).get());
+                changed = true;
+            } catch (ExecutionException e) {
+                logger.warn("Could not register a warm-up user: " + e.getCause());
+                return pool;
+            }
+        }
+        if (file != null && changed) {
+            writeUsers(file, pool);
+        }
+        return pool;
+    }
+
+    private Path userDirectory() {
+        var directory = settings.userDirectory;
+        return directory.startsWith("~/") ? Path.of(System.getProperty("user.home"), directory.substring(2)) : Path.of(directory);
+    }
+
+    private static List<UserFixture> readUsers(Path file) {
+        if (file == null || !Files.exists(file)) {
+            return List.of();
+        }
+        try {
+            var stored = Serialization.mapper().readValue(file.toFile(), new TypeReference<List<StoredUser>>() {});
+            return stored.stream().map(StoredUser::fixture).toList();
+        } catch (IOException e) {
+            logger.warn("Could not read the warm-up users in " + file + ", registering new ones: " + e.getMessage());
+            return List.of();
+        }
+    }
+
+    private static void writeUsers(Path file, List<UserFixture> users) {
+        try {
+            Files.createDirectories(file.getParent());
+            Serialization.mapper().writeValue(file.toFile(), users.stream().map(StoredUser::of).toList());
+            logger.info("Stored " + users.size() + " warm-up users in " + file);
+        } catch (IOException e) {
+            logger.warn("Could not store the warm-up users in " + file + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    protected ValidationMode validationMode() {
+        return validationMode;
+    }
+
+    /** Starts the next flow of the loop, unless the warm-up is over */
+    private void next() {
+        if (stopped) {
+            return;
+        }
+        var n = started.getAndIncrement();
+        var start = System.nanoTime();
+        outstanding.incrementAndGet();
+        execute(scenarios.get((int) (n % scenarios.size())), n).whenComplete((result, error) -> {
+            completed(System.nanoTime() - start, error);
+            outstanding.decrementAndGet();
+            next();
+        });
+    }
+
+    private CompletableFuture<?> execute(LoadScenario scenario, long n) {
+        return switch (scenario) {
+            case HEALTH -> supply(this::createHealthRequest)
+                    .thenCompose(this::sendAsync)
+                    .thenApply(response -> {
+                        if (response.statusCode() != STATUS_CODE_SUCCESSFUL) {
+                            throw new UnexpectedResponseError("Health", STATUS_CODE_SUCCESSFUL, response.statusCode(), response.body());
+                        }
+                        return response;
+                    });
+            case REGISTER -> registerAsync(newUser("Warmup", "Test", "User"));
+            case LOGIN -> loginAsync(users.get((int) (n % users.size())));
+            case GET_USER -> authenticatedGetUserAsync(users.get((int) (n % users.size())));
+        };
+    }
+
+    private synchronized void completed(long latencyNanos, Throwable error) {
+        if (stopped || settled.getCount() == 0) {
+            return;
+        }
+        if (error == null) {
+            window.recordValue(Math.max(0, TimeUnit.NANOSECONDS.toMicros(latencyNanos)));
+        } else {
+            windowFailures++;
+            lastError = error;
+        }
+        if (++windowCompleted < settings.windowRequests) {
+            return;
+        }
+        if (windowFailures == windowCompleted) {
+            outcome = "stopped, every request failed (" + lastError + ")";
+            settled.countDown();
+            return;
+        }
+        var p50 = window.getValueAtPercentile(50) / 1000.0;
+        var p90 = window.getValueAtPercentile(90) / 1000.0;
+        var steady = windows > 0 && Math.abs(p50 - previousP50) <= settings.tolerance * previousP50
+                && Math.abs(p90 - previousP90) <= settings.tolerance * previousP90;
+        stableInARow = steady ? stableInARow + 1 : 0;
+        windows++;
+        previousP50 = p50;
+        previousP90 = p90;
+        window.reset();
+        windowCompleted = 0;
+        windowFailures = 0;
+        if (stableInARow >= settings.stableWindows) {
+            outcome = "settled in " + windows + " windows";
+            settled.countDown();
+        }
+    }
+
+    /** A pool user as kept on disk: its registration and the id get user needs */
+    private record StoredUser(Integer id, String username, String password, String email, String firstName,
+                              String lastName, String middleName) {
+        static StoredUser of(UserFixture user) {
+            var registration = user.getRegistration();
+            return new StoredUser(user.getUserId(), registration.getUsername(), registration.getPassword(),
+                    registration.getEmail(), registration.getFirstName(), registration.getLastName(), registration.getMiddleName());
+        }
+
+        UserFixture fixture() {
+            var user = new UserFixture(new RegistrationRequest(username, password, email, firstName, lastName, middleName));
+            user.setUserId(id);
+            return user;
+        }
+    }
+}
@@ -1,20 +1,267 @@
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
 
+/**
+ * Reads {@code configuration.yaml}. Every setting can be overridden for one run without editing the file,
+ * by a system property {@code finbet.<path>} such as {@code -Dfinbet.load.arrivalRate=200} or an environment
+ * variable {@code FINBET_<PATH>} such as {@code FINBET_LOAD_ARRIVAL_RATE=200}; system properties win over
+ * the environment. Values are read as YAML, so {@code [register, login]} sets a list. Map entries such as
+ * {@code sla.endpoints.login.p99Ms} can be named too, though keys that are not plain words only through
+ * system properties.
+ */
 public class YamlReader {
-    public static Config readConfig(String fileName) {
-        ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
+    public static final String CONFIG_FILE = "configuration.yaml";
+    private static final String PROPERTY_PREFIX = "finbet.";
+    private static final String ENVIRONMENT_PREFIX = "FINBET_";
+    private static final Logger logger = LoggerFactory.getLogger(YamlReader.class);
+    private static final ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
+    private static volatile Config snapshot;
+
+    /**
+     * The configuration of this JVM, read and overridden once and shared by every part of the framework.
+     * Its settings are final and its lists and maps unmodifiable: code that needs a variant of it works on a
+     * {@link Config#with(Map)} copy.
+     */
+    public static Config config() {
+        var config = snapshot;
+        if (config == null) {
+            synchronized (YamlReader.class) {
+                if (snapshot == null) {
+                    var loaded = readConfig(CONFIG_FILE);
+                    if (loaded == null) {
+                        throw new IllegalStateException("Could not read configuration from " + CONFIG_FILE);
+                    }
+                    freeze(loaded);
+                    snapshot = loaded;
+                }
+                config = snapshot;
+            }
+        }
+        return config;
+    }
 
+    /** A fresh copy of a configuration file with the overrides applied; null when it cannot be read */
+    public static Config readConfig(String fileName) {
         try (InputStream inputStream = YamlReader.class.getClassLoader().getResourceAsStream(fileName)) {
             if (inputStream == null) {
                 throw new IOException("File not found: " + fileName);
             }
-            return mapper.readValue(inputStream, Config.class);
+            var tree = mapper.readTree(inputStream);
+            var root = tree instanceof ObjectNode object ? object : mapper.createObjectNode();
+            applyOverrides(root, System.getenv(), System.getProperties());
+            return mapper.treeToValue(root, Config.class);
         } catch (IOException e) {
             e.printStackTrace();
             return null;
         }
     }
+
+    /** A copy of {@code config} with the settings at the given paths replaced; fails on a path that names no setting */
+    static Config override(Config config, Map<String, ?> settings) {
+        ObjectNode root = mapper.valueToTree(config);
+        for (var setting : settings.entrySet()) {
+            var path = propertyPath(setting.getKey());
+            if (path == null) {
+                throw new IllegalArgumentException("No setting matches " + setting.getKey());
+            }
+            set(root, path, mapper.valueToTree(setting.getValue()));
+        }
+        try {
+            var copy = mapper.treeToValue(root, Config.class);
+            freeze(copy);
+            return copy;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Settings do not fit the configuration: " + settings, e);
+        }
+    }
+
+    /** Makes the lists and maps of {@code settings} and its nested settings unmodifiable */
+    private static void freeze(Object settings) {
+        for (var field : fields(settings.getClass())) {
+            try {
+                var value = field.get(settings);
+                field.setAccessible(true);
+                if (value instanceof List<?> list) {
+                    list.forEach(YamlReader::freezeElement);
+                    field.set(settings, Collections.unmodifiableList(new ArrayList<>(list)));
+                } else if (value instanceof Map<?, ?> map) {
+                    map.values().forEach(YamlReader::freezeElement);
+                    field.set(settings, Collections.unmodifiableMap(new LinkedHashMap<>(map)));
+                } else {
+                    freezeElement(value);
+                }
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Could not freeze " + field, e);
+            }
+        }
+    }
+
+    private static void freezeElement(Object value) {
+        if (value != null && settingsType(value.getClass()) != null) {
+            freeze(value);
+        }
+    }
+
+    static void applyOverrides(ObjectNode root, Map<String, String> environment, Map<?, ?> properties) throws IOException {
+        var overrides = new TreeMap<String, String>();
+        environment.forEach((name, value) -> {
+            if (name.startsWith(ENVIRONMENT_PREFIX)) {
+                overrides.put(name, value);
+            }
+        });
+        var fromProperties = new TreeMap<String, String>();
+        properties.forEach((name, value) -> {
+            if (name instanceof String key && key.startsWith(PROPERTY_PREFIX)) {
+                fromProperties.put(key, String.valueOf(value));
+            }
+        });
+        overrides.putAll(fromProperties);
+
+        for (var override : overrides.entrySet()) {
+            var name = override.getKey();
+            var path = name.startsWith(PROPERTY_PREFIX)
+                    ? propertyPath(name.substring(PROPERTY_PREFIX.length()))
+                    : environmentPath(name.substring(ENVIRONMENT_PREFIX.length()));
+            if (path == null) {
+                throw new IllegalArgumentException("No setting matches " + name);
+            }
+            set(root, path, value(override.getValue()));
+            logger.info("Setting " + String.join(".", path) + " from " + name);
+        }
+    }
+
+    private static void set(ObjectNode root, List<String> path, JsonNode value) {
+        var node = root;
+        for (var key : path.subList(0, path.size() - 1)) {
+            node = node.get(key) instanceof ObjectNode child ? child : node.putObject(key);
+        }
+        node.set(path.get(path.size() - 1), value);
+    }
+
+    private static JsonNode value(String text) throws IOException {
+        var node = mapper.readTree(text);
+        return node == null || node.isMissingNode() ? TextNode.valueOf(text) : node;
+    }
+
+    /** Field names in {@code a.b.c}, matched case-insensitively against Config; null when one does not exist */
+    private static List<String> propertyPath(String name) {
+        var path = new ArrayList<String>();
+        Class<?> type = Config.class;
+        var segments = name.split("\\.");
+        for (int i = 0; i < segments.length; i++) {
+            var field = type == null ? null : field(type, segments[i]);
+            if (field == null) {
+                return null;
+            }
+            path.add(field.getName());
+            if (Map.class.isAssignableFrom(field.getType())) {
+                if (++i == segments.length) {
+                    return path;
+                }
+                path.add(segments[i]);
+                type = settingsType(mapValueType(field));
+            } else {
+                type = settingsType(field.getType());
+            }
+        }
+        return path;
+    }
+
+    /** {@code LOAD_ARRIVAL_RATE} to load.arrivalRate, following the camel case words of the Config fields */
+    private static List<String> environmentPath(String name) {
+        var path = new ArrayList<String>();
+        Class<?> type = Config.class;
+        var rest = name;
+        while (type != null && !rest.isEmpty()) {
+            Field match = null;
+            for (var field : fields(type)) {
+                var word = upperSnake(field.getName());
+                if ((rest.equals(word) || rest.startsWith(word + "_")) && (match == null || word.length() > upperSnake(match.getName()).length())) {
+                    match = field;
+                }
+            }
+            if (match == null) {
+                return null;
+            }
+            path.add(match.getName());
+            rest = rest.substring(Math.min(rest.length(), upperSnake(match.getName()).length() + 1));
+            if (Map.class.isAssignableFrom(match.getType())) {
+                if (rest.isEmpty()) {
+                    return path;
+                }
+                var valueType = settingsType(mapValueType(match));
+                var key = rest;
+                rest = "";
+                if (valueType != null) {
+                    for (var field : fields(valueType)) {
+                        var suffix = "_" + upperSnake(field.getName());
+                        if (key.endsWith(suffix)) {
+                            rest = key.substring(key.length() - suffix.length() + 1);
+                            key = key.substring(0, key.length() - suffix.length());
+                            break;
+                        }
+                    }
+                }
+                path.add(key.toLowerCase(Locale.ROOT));
+                type = rest.isEmpty() ? null : valueType;
+            } else {
+                type = settingsType(match.getType());
+            }
+        }
+        return rest.isEmpty() ? path : null;
+    }
+
+    private static Field field(Class<?> type, String name) {
+        for (var field : fields(type)) {
+            if (field.getName().equalsIgnoreCase(name)) {
+                return field;
+            }
+        }
+        return null;
+    }
+
+    private static List<Field> fields(Class<?> type) {
+        var fields = new ArrayList<Field>();
+        for (var field : type.getFields()) {
+            if (!Modifier.isStatic(field.getModifiers())) {
+                fields.add(field);
+            }
+        }
+        return fields;
+    }
+
+    /** The nested settings classes of Config can be descended into; lists and plain values cannot */
+    private static Class<?> settingsType(Class<?> type) {
+        return type != null && type.getDeclaringClass() == Config.class ? type : null;
+    }
+
+    private static Class<?> mapValueType(Field field) {
+        if (field.getGenericType() instanceof ParameterizedType generic
+                && generic.getActualTypeArguments()[1] instanceof Class<?> valueType) {
+            return valueType;
+        }
+        return null;
+    }
+
+    private static String upperSnake(String camelCase) {
+        return camelCase.replaceAll("([a-z0-9])([A-Z])", "$1_$2").toUpperCase(Locale.ROOT);
+    }
 }
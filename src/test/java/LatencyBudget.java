@@ -0,0 +1,15 @@
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/** Latency budget of a test method, enforced by {@link LatencyBudgetListener} */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface LatencyBudget {
+    /** Limit for every blocking request one invocation sends, in milliseconds; 0 means no limit */
+    int maxMs() default 0;
+
+    /** p99 over all invocations (every data-provider row), checked at the end of the suite; 0 means no limit */
+    int p99Ms() default 0;
+}
@@ -0,0 +1,73 @@
+import org.HdrHistogram.Histogram;
+import org.testng.IInvokedMethod;
+import org.testng.IInvokedMethodListener;
+import org.testng.ITestResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Captures the requests of every {@link LatencyBudget} test and fails invocations over their maxMs */
+public class LatencyBudgetListener implements IInvokedMethodListener {
+    private static final ConcurrentHashMap<String, MethodLatency> methodLatencies = new ConcurrentHashMap<>();
+
+    @Override
+    public void beforeInvocation(IInvokedMethod method, ITestResult testResult) {
+        if (budgetOf(method) != null) {
+            LatencyCapture.start();
+        }
+    }
+
+    @Override
+    public void afterInvocation(IInvokedMethod method, ITestResult testResult) {
+        var budget = budgetOf(method);
+        if (budget == null) {
+            return;
+        }
+        var histogram = LatencyCapture.stop().histogram();
+        var name = method.getTestMethod().getQualifiedName();
+        methodLatencies.computeIfAbsent(name, key -> new MethodLatency(budget)).add(histogram);
+
+        var maxMs = histogram.getMaxValue() / 1000.0;
+        if (budget.maxMs() > 0 && maxMs > budget.maxMs() && testResult.getStatus() == ITestResult.SUCCESS) {
+            testResult.setStatus(ITestResult.FAILURE);
+            testResult.setThrowable(new LatencyBudgetExceededError(String.format(
+                    "%s sent a request taking %.1f ms, budget is %d ms", name, maxMs, budget.maxMs())));
+        }
+    }
+
+    /** p99 budgets of the annotated methods that are not met by all their invocations so far */
+    public static List<String> violations() {
+        var violations = new ArrayList<String>();
+        methodLatencies.forEach((name, latency) -> {
+            if (latency.budget.p99Ms() > 0) {
+                violations.addAll(LatencySla.verify(name, latency.snapshot(), null, latency.budget.p99Ms()));
+            }
+        });
+        return violations;
+    }
+
+    private static LatencyBudget budgetOf(IInvokedMethod method) {
+        if (!method.isTestMethod()) {
+            return null;
+        }
+        return method.getTestMethod().getConstructorOrMethod().getMethod().getAnnotation(LatencyBudget.class);
+    }
+
+    private static class MethodLatency {
+        private final LatencyBudget budget;
+        private final Histogram histogram = new Histogram(3);
+
+        MethodLatency(LatencyBudget budget) {
+            this.budget = budget;
+        }
+
+        synchronized void add(Histogram invocation) {
+            histogram.add(invocation);
+        }
+
+        synchronized Histogram snapshot() {
+            return histogram.copy();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.IAlterSuiteListener;
+import org.testng.ISuite;
+import org.testng.ISuiteListener;
+import org.testng.xml.XmlSuite;
+
+import java.io.IOException;
+import java.util.List;
+
+/** Applies the configured parallelism to every suite, warms the client up and releases it once the suite is done */
+public class SuiteListener implements IAlterSuiteListener, ISuiteListener {
+    private static final Logger logger = LoggerFactory.getLogger(SuiteListener.class);
+    private long started = System.nanoTime();
+
+    @Override
+    public void alter(List<XmlSuite> suites) {
+        var config = YamlReader.config();
+        for (var suite : suites) {
+            suite.setParallel(XmlSuite.ParallelMode.METHODS);
+            suite.setThreadCount(config.execution.threadCount);
+            suite.setDataProviderThreadCount(config.execution.dataProviderThreadCount);
+            logger.info("Suite " + suite.getName() + " runs with " + config.execution.threadCount
+                    + " method threads and " + config.execution.dataProviderThreadCount + " data provider threads"
+                    + ", client thread mode: " + ThreadMode.of(config.execution));
+        }
+    }
+
+    @Override
+    public void onStart(ISuite suite) {
+        try {
+            new Warmup(YamlReader.config().warmup, ValidationMode.TREE).run();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        started = System.nanoTime();
+    }
+
+    @Override
+    public void onFinish(ISuite suite) {
+        logger.info("Suite " + suite.getName() + " finished, " + BaseClass.connectionStats());
+        if (BaseClass.endpoints().targets().size() > 1) {
+            BaseClass.targetSummaries().forEach(line -> logger.info("Target " + line));
+        }
+        try {
+            BaseClass.writeLatencyReport();
+        } catch (IOException e) {
+            logger.error("Could not write latency report: " + e.getMessage());
+        }
+        try {
+            BaseClass.recordRun("suite-" + suite.getName(), System.nanoTime() - started);
+        } finally {
+            BaseClass.shutdownClient();
+        }
+    }
+}
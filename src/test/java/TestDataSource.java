@@ -0,0 +1,394 @@
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+/**
+ * Test data read from a CSV or JSON Lines file one record at a time, for data providers that return
+ * {@code Iterator<Object[]>}. The file is memory-mapped a window at a time and each line is decoded only
+ * when the provider asks for it, so memory stays flat however many rows the file has.
+ *
+ * CSV files start with a header row naming the columns; fields may be quoted with {@code "}, a doubled quote
+ * standing for one. JSONL files hold one object per line, its field names being the columns. Either way a
+ * record is one line: quoted line breaks are not supported. Files ending in {@code .jsonl} or {@code .ndjson}
+ * are read as JSONL, everything else as CSV.
+ *
+ * TestNG only streams a data provider that is not {@code parallel}; a parallel one collects every row before
+ * the first test starts.
+ */
+public class TestDataSource implements Iterable<TestDataSource.Row> {
+    private static final int WINDOW_BYTES = 64 * 1024 * 1024;
+    private final Path file;
+    private final int windowBytes;
+    private final boolean jsonl;
+
+    private TestDataSource(Path file, int windowBytes) {
+        this.file = file;
+        this.windowBytes = windowBytes;
+        var name = file.getFileName().toString().toLowerCase();
+        this.jsonl = name.endsWith(".jsonl") || name.endsWith(".ndjson");
+    }
+
+    /** A file path, or failing that a resource on the classpath such as {@code data/invalid-registrations.csv} */
+    public static TestDataSource open(String location) {
+        var path = Path.of(location);
+        if (Files.isRegularFile(path)) {
+            return new TestDataSource(path, WINDOW_BYTES);
+        }
+        var resource = TestDataSource.class.getClassLoader().getResource(location);
+        if (resource == null || !"file".equals(resource.getProtocol())) {
+            throw new IllegalArgumentException("Test data file not found: " + location);
+        }
+        try {
+            return new TestDataSource(Path.of(resource.toURI()), WINDOW_BYTES);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Test data file not found: " + location, e);
+        }
+    }
+
+    public static TestDataSource open(Path file) {
+        return new TestDataSource(file, WINDOW_BYTES);
+    }
+
+    /** Maps {@code windowBytes} at a time, so tests can cross window boundaries with small files */
+    static TestDataSource open(Path file, int windowBytes) {
+        return new TestDataSource(file, windowBytes);
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    /** Rows in file order; the file is closed once the last one has been read */
+    @Override
+    public Iterator<Row> iterator() {
+        try {
+            return new Rows(new MappedLines(file, windowBytes), jsonl);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read test data from " + file, e);
+        }
+    }
+
+    /** The named columns of each row as strings, in the order given; missing columns are null */
+    public Iterator<Object[]> rows(String... columns) {
+        return rows(row -> row.values(columns));
+    }
+
+    public Iterator<Object[]> rows(Function<Row, Object[]> mapper) {
+        return map(iterator(), mapper);
+    }
+
+    /** Columns username, password, email, firstName, lastName and middleName */
+    public Iterator<RegistrationRequest> registrations() {
+        return map(iterator(), Row::registration);
+    }
+
+    /** Columns username and password */
+    public Iterator<LoginRequest> logins() {
+        return map(iterator(), Row::login);
+    }
+
+    /** Lazily applies {@code mapper} to each element, e.g. to turn requests into data provider rows */
+    public static <T, R> Iterator<R> map(Iterator<T> source, Function<? super T, ? extends R> mapper) {
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return source.hasNext();
+            }
+
+            @Override
+            public R next() {
+                return mapper.apply(source.next());
+            }
+        };
+    }
+
+    /** Everything {@code first} returns followed by everything {@code second} returns */
+    public static <T> Iterator<T> concat(Iterator<? extends T> first, Iterator<? extends T> second) {
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return first.hasNext() || second.hasNext();
+            }
+
+            @Override
+            public T next() {
+                return first.hasNext() ? first.next() : second.next();
+            }
+        };
+    }
+
+    /** One record: its values by column name */
+    public static class Row {
+        private final Map<String, String> values;
+        private final long line;
+
+        Row(Map<String, String> values, long line) {
+            this.values = values;
+            this.line = line;
+        }
+
+        public String get(String column) {
+            return values.get(column);
+        }
+
+        public int getInt(String column) {
+            var value = get(column);
+            if (value == null) {
+                throw new IllegalArgumentException("Line " + line + " has no " + column);
+            }
+            return Integer.parseInt(value.trim());
+        }
+
+        public Object[] values(String... columns) {
+            var result = new Object[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                result[i] = get(columns[i]);
+            }
+            return result;
+        }
+
+        public RegistrationRequest registration() {
+            return new RegistrationRequest(get("username"), get("password"), get("email"), get("firstName"),
+                    get("lastName"), get("middleName"));
+        }
+
+        public LoginRequest login() {
+            return new LoginRequest(get("username"), get("password"));
+        }
+
+        /** Line number in the file, from 1 */
+        public long line() {
+            return line;
+        }
+
+        @Override
+        public String toString() {
+            return "line " + line + " " + values;
+        }
+    }
+
+    /** Parses the lines of one file into rows, remembering only the CSV header */
+    private static class Rows implements Iterator<Row> {
+        private final MappedLines lines;
+        private final boolean jsonl;
+        private String[] header;
+        private Row next;
+
+        Rows(MappedLines lines, boolean jsonl) {
+            this.lines = lines;
+            this.jsonl = jsonl;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                next = read();
+            }
+            return next != null;
+        }
+
+        @Override
+        public Row next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            var row = next;
+            next = null;
+            return row;
+        }
+
+        private Row read() {
+            try {
+                String line;
+                while ((line = lines.next()) != null) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    if (jsonl) {
+                        return jsonRow(line);
+                    }
+                    var fields = splitCsv(line);
+                    if (header == null) {
+                        header = fields.toArray(String[]::new);
+                        continue;
+                    }
+                    return csvRow(fields);
+                }
+                return null;
+            } catch (IOException e) {
+                lines.closeQuietly();
+                throw new UncheckedIOException("Could not read test data from " + lines.file + " at line " + lines.number, e);
+            }
+        }
+
+        private Row csvRow(List<String> fields) throws IOException {
+            if (fields.size() > header.length) {
+                throw new IOException(fields.size() + " fields but the header names " + header.length + " columns");
+            }
+            var values = new HashMap<String, String>(header.length * 2);
+            for (int i = 0; i < fields.size(); i++) {
+                values.put(header[i], fields.get(i));
+            }
+            return new Row(values, lines.number);
+        }
+
+        /** Text values as they are, objects and arrays as compact JSON, JSON null as null */
+        private Row jsonRow(String line) throws IOException {
+            var node = Serialization.readTree(line);
+            if (!node.isObject()) {
+                throw new IOException("Expected a JSON object per line");
+            }
+            var values = new HashMap<String, String>(node.size() * 2);
+            for (var fields = node.fields(); fields.hasNext(); ) {
+                var field = fields.next();
+                values.put(field.getKey(), text(field.getValue()));
+            }
+            return new Row(values, lines.number);
+        }
+
+        private static String text(JsonNode value) {
+            if (value.isNull()) {
+                return null;
+            }
+            return value.isValueNode() ? value.asText() : value.toString();
+        }
+
+        static List<String> splitCsv(String line) throws IOException {
+            var fields = new ArrayList<String>();
+            var field = new StringBuilder();
+            var quoted = false;
+            for (int i = 0; i < line.length(); i++) {
+                var c = line.charAt(i);
+                if (quoted) {
+                    if (c != '"') {
+                        field.append(c);
+                    } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else {
+                    field.append(c);
+                }
+            }
+            if (quoted) {
+                throw new IOException("Unterminated quoted field");
+            }
+            fields.add(field.toString());
+            return fields;
+        }
+    }
+
+    /**
+     * UTF-8 lines of a file, mapped {@code windowBytes} at a time. A window starts at the first line not yet
+     * read, so a line never straddles two; the previous window is dropped when the next one is mapped.
+     */
+    private static class MappedLines implements Closeable {
+        private final Path file;
+        private final FileChannel channel;
+        private final int windowBytes;
+        private final long size;
+        private MappedByteBuffer window;
+        private long windowStart;
+        private long position;
+        private long number;
+        private byte[] line = new byte[256];
+
+        MappedLines(Path file, int windowBytes) throws IOException {
+            this.file = file;
+            this.windowBytes = windowBytes;
+            this.channel = FileChannel.open(file);
+            this.size = channel.size();
+        }
+
+        /** The next line without its line break, or null at the end of the file */
+        String next() throws IOException {
+            if (position >= size) {
+                close();
+                return null;
+            }
+            var end = findLineEnd();
+            var length = (int) (end - position);
+            var text = decode(length);
+            position = end + 1;
+            number++;
+            if (number == 1 && text.startsWith("\uFEFF")) {
+                text = text.substring(1);
+            }
+            return text;
+        }
+
+        /** Offset of the next '\n' or of the end of the file, remapping when the window runs out first */
+        private long findLineEnd() throws IOException {
+            while (true) {
+                if (window == null || position < windowStart) {
+                    map(position);
+                }
+                var limit = windowStart + window.limit();
+                for (long offset = position; offset < limit; offset++) {
+                    if (window.get((int) (offset - windowStart)) == '\n') {
+                        return offset;
+                    }
+                }
+                if (limit >= size) {
+                    return size;
+                }
+                if (position == windowStart) {
+                    throw new IOException("Line longer than " + windowBytes + " bytes");
+                }
+                map(position);
+            }
+        }
+
+        private void map(long start) throws IOException {
+            windowStart = start;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(windowBytes, size - start));
+        }
+
+        private String decode(int length) {
+            if (line.length < length) {
+                line = new byte[Math.max(length, line.length * 2)];
+            }
+            window.get((int) (position - windowStart), line, 0, length);
+            if (length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+            return new String(line, 0, length, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void close() throws IOException {
+            window = null;
+            channel.close();
+        }
+
+        void closeQuietly() {
+            try {
+                close();
+            } catch (IOException e) {
+                // the read error is what gets reported
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/** CSV and JSON Lines parsing of {@link TestDataSource}, on small files written for each case */
+public class TestDataSourceParsing {
+    private static final Logger logger = LoggerFactory.getLogger(TestDataSourceParsing.class);
+
+    @Test
+    public void quotedAndEscapedFields() throws IOException {
+        logger.info("Starting method quotedAndEscapedFields");
+
+        var rows = read("quoted.csv", "a,b,c\n\"x,y\",\"say \"\"hi\"\"\",\"\"\nplain, spaced ,\"\"\"\"\n");
+
+        Assert.assertEquals(rows.size(), 2);
+        Assert.assertEquals(rows.get(0).values("a", "b", "c"), new Object[] {"x,y", "say \"hi\"", ""});
+        Assert.assertEquals(rows.get(1).values("a", "b", "c"), new Object[] {"plain", " spaced ", "\""});
+    }
+
+    @Test
+    public void byteOrderMarkIsDropped() throws IOException {
+        logger.info("Starting method byteOrderMarkIsDropped");
+
+        var rows = read("bom.csv", "\uFEFFusername,password\nt0000001,Password1@\n");
+
+        Assert.assertEquals(rows.size(), 1);
+        Assert.assertEquals(rows.get(0).get("username"), "t0000001");
+        Assert.assertEquals(rows.get(0).login().getPassword(), "Password1@");
+    }
+
+    @Test
+    public void crlfLineEndings() throws IOException {
+        logger.info("Starting method crlfLineEndings");
+
+        var rows = read("crlf.csv", "a,b\r\n1,2\r\n\r\n3,4\r\n");
+
+        Assert.assertEquals(rows.size(), 2);
+        Assert.assertEquals(rows.get(0).values("a", "b"), new Object[] {"1", "2"});
+        Assert.assertEquals(rows.get(1).values("a", "b"), new Object[] {"3", "4"});
+        Assert.assertEquals(rows.get(1).line(), 4);
+    }
+
+    @Test
+    public void shortRowsMapMissingColumnsToNull() throws IOException {
+        logger.info("Starting method shortRowsMapMissingColumnsToNull");
+
+        var rows = read("short.csv", "username,password,email\nonly\nuser,\n");
+
+        Assert.assertEquals(rows.get(0).values("username", "password", "email"), new Object[] {"only", null, null});
+        Assert.assertEquals(rows.get(1).values("username", "password", "email"), new Object[] {"user", "", null});
+        Assert.assertNull(rows.get(0).registration().getEmail());
+    }
+
+    @Test
+    public void linesCrossingWindowBoundaries() throws IOException {
+        logger.info("Starting method linesCrossingWindowBoundaries");
+
+        var content = new StringBuilder("id,name\n");
+        for (int i = 0; i < 200; i++) {
+            content.append(i).append(",name-").append("x".repeat(i % 17)).append("\r\n");
+        }
+        var file = write("windows.csv", content.toString());
+
+        for (var windowBytes : new int[] {32, 33, 47, 64, 1000}) {
+            var rows = new ArrayList<TestDataSource.Row>();
+            TestDataSource.open(file, windowBytes).forEach(rows::add);
+            Assert.assertEquals(rows.size(), 200, "Rows with a window of " + windowBytes + " bytes");
+            for (int i = 0; i < rows.size(); i++) {
+                Assert.assertEquals(rows.get(i).getInt("id"), i, "Window of " + windowBytes + " bytes");
+                Assert.assertEquals(rows.get(i).get("name"), "name-" + "x".repeat(i % 17), "Window of " + windowBytes + " bytes");
+            }
+        }
+    }
+
+    @Test(expectedExceptions = java.io.UncheckedIOException.class)
+    public void lineLongerThanTheWindowFails() throws IOException {
+        logger.info("Starting method lineLongerThanTheWindowFails");
+
+        var file = write("long.csv", "a\n" + "y".repeat(100) + "\n");
+        TestDataSource.open(file, 32).forEach(row -> {});
+    }
+
+    @Test
+    public void jsonLines() throws IOException {
+        logger.info("Starting method jsonLines");
+
+        var rows = read("rows.jsonl", "\uFEFF{\"body\":{\"username\":\"a\"},\"missing\":\"password\"}\r\n"
+                + "\n{\"body\":null,\"missing\":7}\n");
+
+        Assert.assertEquals(rows.size(), 2);
+        Assert.assertEquals(rows.get(0).values("body", "missing"), new Object[] {"{\"username\":\"a\"}", "password"});
+        Assert.assertEquals(rows.get(1).values("body", "missing", "absent"), new Object[] {null, "7", null});
+    }
+
+    private static List<TestDataSource.Row> read(String name, String content) throws IOException {
+        var rows = new ArrayList<TestDataSource.Row>();
+        TestDataSource.open(write(name, content)).forEach(rows::add);
+        return rows;
+    }
+
+    private static Path write(String name, String content) throws IOException {
+        var directory = Files.createDirectories(Path.of("target", "test-data"));
+        return Files.writeString(directory.resolve(name), content, StandardCharsets.UTF_8);
+    }
+}
@@ -1,4 +1,3 @@
-import org.apache.http.client.utils.URIBuilder;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 import org.slf4j.Logger;
@@ -6,46 +5,24 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 
-public class TestHealthStatus {
+public class TestHealthStatus extends BaseClass {
     private static final Logger logger = LoggerFactory.getLogger(TestHealthStatus.class);
 
     /** Test health status */
     @Test
+    @LatencyBudget(maxMs = 2000)
     public void healthStatus() throws URISyntaxException, IOException, InterruptedException {
         logger.info("Starting method healthStatus");
 
-        var config = YamlReader.readConfig("configuration.yaml");
-        var client = HttpClient.newHttpClient();
+        logger.info("API is running at {}", uri("").getAuthority());
 
-        if (config == null) {
-            logger.error("Could not read configuration from config file.");
-            throw new IllegalStateException("Configuration is null");
-        }
+        var request = createHealthRequest();
 
-        logger.info("API is running at " + config.host.url + ":" + config.host.port);
-
-        var request = HttpRequest.newBuilder()
-                .uri(new URIBuilder()
-                        .setScheme("http")
-                        .setHost(config.host.url)
-                        .setPort(config.host.port)
-                        .setPath(BaseClass.HEALTH_PATH)
-                        .build())
-                .build();
-
-        logger.info("API URL: " + request.uri());
-
-        var response = client.send(request, HttpResponse.BodyHandlers.ofString());
-
-        logger.info("Validating response");
+        var response = send(request);
 
         Assert.assertEquals(response.statusCode(), 200, "Expected response is 200");
-        logger.info("Response status code: " + response.statusCode());
-        Assert.assertEquals(response.body(), "{\"status\":\"healthy\"}\n", "Status should be healthy");
-        logger.info("Response status code: " + response.body());
+        Assert.assertEquals(response.body(), BaseClass.HEALTHY_RESPONSE, "Status should be healthy");
+        logger.debug("Response body: {}", response.body());
     }
 }
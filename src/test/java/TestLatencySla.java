@@ -0,0 +1,22 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterSuite;
+
+import java.util.ArrayList;
+
+/** Aggregate latency budgets from the sla section of the configuration and from {@link LatencyBudget} */
+public class TestLatencySla {
+    private static final Logger logger = LoggerFactory.getLogger(TestLatencySla.class);
+
+    @AfterSuite(alwaysRun = true)
+    public void latencyBudgetsAreMet() {
+        logger.info("Starting method latencyBudgetsAreMet");
+
+        var violations = new ArrayList<>(BaseClass.latencyBudgetViolations());
+        violations.addAll(LatencyBudgetListener.violations());
+        violations.forEach(violation -> logger.error("Latency budget exceeded: " + violation));
+
+        Assert.assertTrue(violations.isEmpty(), "Latency budgets exceeded: " + violations);
+    }
+}
@@ -0,0 +1,273 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Response parsing and connection handling of {@link NioTransport}, against a socket server that answers
+ * with scripted bytes, written a few at a time so every parser state also sees partial input.
+ */
+public class TestNioTransport {
+    private static final Logger logger = LoggerFactory.getLogger(TestNioTransport.class);
+    private static final String OK = "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok";
+
+    @Test
+    public void chunkedBodyWithExtensionsAndTrailers() throws Exception {
+        logger.info("Starting method chunkedBodyWithExtensionsAndTrailers");
+
+        try (var server = new ScriptedServer((index, in, out) -> {
+            readRequest(in);
+            write(out, "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+                    + "5\r\nhello\r\n6;name=value\r\n world\r\nA\r\n, chunked!\r\n0\r\nTrailer: x\r\n\r\n");
+            readRequest(in);
+            write(out, OK);
+        }, 1)) {
+            var response = server.get("/chunked");
+            Assert.assertEquals(response.statusCode(), 200);
+            Assert.assertEquals(response.body(), "hello world, chunked!");
+            Assert.assertEquals(server.get("/next").body(), "ok");
+            Assert.assertEquals(server.transport.connectionsOpened(), 1, "Connections opened");
+        }
+    }
+
+    @Test
+    public void pipelinedResponsesComeBackInOrder() throws Exception {
+        logger.info("Starting method pipelinedResponsesComeBackInOrder");
+
+        try (var server = new ScriptedServer((index, in, out) -> {
+            var paths = new ArrayList<String>();
+            for (int i = 0; i < 3; i++) {
+                paths.add(readRequest(in).split(" ")[1]);
+            }
+            var responses = new StringBuilder();
+            for (var path : paths) {
+                responses.append("HTTP/1.1 200 OK\r\nContent-Length: ").append(path.length()).append("\r\n\r\n").append(path);
+            }
+            write(out, responses.toString());
+        }, 3)) {
+            var first = server.send("/first");
+            var second = server.send("/second");
+            var third = server.send("/third");
+
+            Assert.assertEquals(first.get(5, TimeUnit.SECONDS).body(), "/first");
+            Assert.assertEquals(second.get(5, TimeUnit.SECONDS).body(), "/second");
+            Assert.assertEquals(third.get(5, TimeUnit.SECONDS).body(), "/third");
+            Assert.assertEquals(server.transport.connectionsOpened(), 1, "Connections opened");
+        }
+    }
+
+    @Test
+    public void emptyBodyKeepsTheConnection() throws Exception {
+        logger.info("Starting method emptyBodyKeepsTheConnection");
+
+        try (var server = new ScriptedServer((index, in, out) -> {
+            readRequest(in);
+            write(out, "HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n");
+            readRequest(in);
+            write(out, "HTTP/1.1 204 No Content\r\n\r\n");
+            readRequest(in);
+            write(out, OK);
+        }, 1)) {
+            var empty = server.get("/empty");
+            Assert.assertEquals(empty.statusCode(), 200);
+            Assert.assertEquals(empty.body(), "");
+            Assert.assertEquals(server.get("/none").statusCode(), 204);
+            Assert.assertEquals(server.get("/next").body(), "ok");
+            Assert.assertEquals(server.transport.connectionsOpened(), 1, "Connections opened");
+        }
+    }
+
+    @Test
+    public void http10BodyEndsWithTheConnection() throws Exception {
+        logger.info("Starting method http10BodyEndsWithTheConnection");
+
+        try (var server = new ScriptedServer((index, in, out) -> {
+            readRequest(in);
+            write(out, "HTTP/1.0 200 OK\r\nContent-Type: text/plain\r\n\r\nread until close");
+        }, 1)) {
+            Assert.assertEquals(server.get("/first").body(), "read until close");
+            Assert.assertEquals(server.get("/second").body(), "read until close");
+            Assert.assertEquals(server.transport.connectionsOpened(), 2, "Connections opened");
+        }
+    }
+
+    @Test
+    public void interimResponsesAreSkipped() throws Exception {
+        logger.info("Starting method interimResponsesAreSkipped");
+
+        try (var server = new ScriptedServer((index, in, out) -> {
+            readRequest(in);
+            write(out, "HTTP/1.1 100 Continue\r\n\r\nHTTP/1.1 103 Early Hints\r\nLink: </style.css>\r\n\r\n"
+                    + "HTTP/1.1 201 Created\r\nContent-Length: 7\r\nX-Final: yes\r\n\r\ncreated");
+        }, 1)) {
+            var response = server.get("/interim");
+            Assert.assertEquals(response.statusCode(), 201);
+            Assert.assertEquals(response.body(), "created");
+            Assert.assertEquals(response.headers().firstValue("X-Final").orElse(null), "yes");
+            Assert.assertTrue(response.headers().firstValue("Link").isEmpty(), "Headers of the interim response");
+        }
+    }
+
+    @Test
+    public void getOnAConnectionClosedByTheServerIsSentAgain() throws Exception {
+        logger.info("Starting method getOnAConnectionClosedByTheServerIsSentAgain");
+
+        try (var server = new ScriptedServer(TestNioTransport::closeAfterOneResponse, 1)) {
+            Assert.assertEquals(server.get("/first").body(), "ok");
+            Assert.assertEquals(server.get("/second").body(), "ok");
+            Assert.assertEquals(server.transport.connectionsOpened(), 2, "Connections opened");
+        }
+    }
+
+    @Test
+    public void postOnAConnectionClosedByTheServerFails() throws Exception {
+        logger.info("Starting method postOnAConnectionClosedByTheServerFails");
+
+        try (var server = new ScriptedServer(TestNioTransport::closeAfterOneResponse, 1)) {
+            Assert.assertEquals(server.get("/first").body(), "ok");
+            var post = HttpRequest.newBuilder(server.uri("/second"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{}"))
+                    .build();
+            try {
+                server.transport.sendAsync(post, HttpResponse.BodyHandlers.ofString()).get(5, TimeUnit.SECONDS);
+                Assert.fail("A POST the server never answered should fail");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof IOException, "Failure: " + e.getCause());
+            }
+            Assert.assertEquals(server.transport.connectionsOpened(), 1, "Connections opened");
+        }
+    }
+
+    /** Answers the first request of a connection and closes it once the second one arrives */
+    private static void closeAfterOneResponse(int index, InputStream in, OutputStream out) throws IOException {
+        readRequest(in);
+        write(out, OK);
+        readRequest(in);
+    }
+
+    /** The request line of the next request, after reading its headers and body; null when the client closed */
+    private static String readRequest(InputStream in) throws IOException {
+        String requestLine = null;
+        var contentLength = 0;
+        while (true) {
+            var line = readLine(in);
+            if (line == null) {
+                return null;
+            }
+            if (line.isEmpty()) {
+                break;
+            }
+            if (requestLine == null) {
+                requestLine = line;
+            } else if (line.toLowerCase().startsWith("content-length:")) {
+                contentLength = Integer.parseInt(line.substring(15).trim());
+            }
+        }
+        in.readNBytes(contentLength);
+        return requestLine;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        var line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                return null;
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return line.toString(StandardCharsets.ISO_8859_1);
+    }
+
+    /** Writes the response in pieces of a few bytes, so the client reads it in several parts */
+    private static void write(OutputStream out, String response) throws IOException {
+        var bytes = response.getBytes(StandardCharsets.ISO_8859_1);
+        for (int i = 0; i < bytes.length; i += 7) {
+            out.write(bytes, i, Math.min(7, bytes.length - i));
+            out.flush();
+        }
+    }
+
+    /** What the server does with one accepted connection; the connection is closed when it returns */
+    private interface Script {
+        void serve(int index, InputStream in, OutputStream out) throws IOException;
+    }
+
+    /**
+     * Accepts connections on a free local port and serves each with the script on its own thread, with a
+     * transport of its own to send requests to it
+     */
+    private static final class ScriptedServer implements AutoCloseable {
+        final NioTransport transport;
+        private final ServerSocket socket;
+
+        ScriptedServer(Script script, int pipelining) throws IOException {
+            var settings = new Config().with(Map.of("client.pipelining", pipelining, "client.nioSelectors", 1,
+                    "client.executorThreads", 1)).client;
+            this.socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            this.transport = new NioTransport(settings, ThreadMode.PLATFORM);
+            var acceptor = new Thread(() -> {
+                var index = 0;
+                while (!socket.isClosed()) {
+                    try {
+                        var connection = socket.accept();
+                        connection.setTcpNoDelay(true);
+                        var number = index++;
+                        var handler = new Thread(() -> serve(script, number, connection), "scripted-connection-" + number);
+                        handler.setDaemon(true);
+                        handler.start();
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            }, "scripted-server");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        URI uri(String path) {
+            return URI.create("http://127.0.0.1:" + socket.getLocalPort() + path);
+        }
+
+        CompletableFuture<HttpResponse<String>> send(String path) {
+            return transport.sendAsync(HttpRequest.newBuilder(uri(path)).GET().build(), HttpResponse.BodyHandlers.ofString());
+        }
+
+        HttpResponse<String> get(String path) throws Exception {
+            return send(path).get(5, TimeUnit.SECONDS);
+        }
+
+        private static void serve(Script script, int index, Socket connection) {
+            try (connection) {
+                script.serve(index, connection.getInputStream(), connection.getOutputStream());
+            } catch (IOException e) {
+                logger.info("Scripted connection " + index + " ended: " + e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            transport.close();
+            socket.close();
+        }
+    }
+}
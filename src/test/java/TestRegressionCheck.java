@@ -0,0 +1,62 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Map;
+
+/** The Student t arithmetic of {@link RegressionCheck}, against values from published t tables */
+public class TestRegressionCheck {
+    private static final Logger logger = LoggerFactory.getLogger(TestRegressionCheck.class);
+    private static final double TOLERANCE = 1e-5;
+
+    @Test
+    public void studentTCdfMatchesTables() {
+        logger.info("Starting method studentTCdfMatchesTables");
+
+        Assert.assertEquals(RegressionCheck.studentTCdf(0, 7), 0.5, TOLERANCE);
+        Assert.assertEquals(RegressionCheck.studentTCdf(1, 1), 0.75, TOLERANCE);          // Cauchy: 1/2 + atan(1)/pi
+        Assert.assertEquals(RegressionCheck.studentTCdf(12.706205, 1), 0.975, TOLERANCE);
+        Assert.assertEquals(RegressionCheck.studentTCdf(2, 2), 0.5 + 1 / Math.sqrt(6), TOLERANCE);
+        Assert.assertEquals(RegressionCheck.studentTCdf(2.131847, 4), 0.95, TOLERANCE);
+        Assert.assertEquals(RegressionCheck.studentTCdf(2.015048, 5), 0.95, TOLERANCE);
+        Assert.assertEquals(RegressionCheck.studentTCdf(-2.015048, 5), 0.05, TOLERANCE);
+        Assert.assertEquals(RegressionCheck.studentTCdf(2.228139, 10), 0.975, TOLERANCE);
+        Assert.assertEquals(RegressionCheck.studentTCdf(3.169273, 10), 0.995, TOLERANCE);
+        Assert.assertEquals(RegressionCheck.studentTCdf(2.821438, 9), 0.99, TOLERANCE);
+        Assert.assertEquals(RegressionCheck.studentTCdf(1.962339, 1000), 0.975, TOLERANCE);
+    }
+
+    @Test
+    public void predictionTestGreaterAtTableQuantiles() {
+        logger.info("Starting method predictionTestGreaterAtTableQuantiles");
+
+        double[] baseline = {10, 12, 11, 13, 9};                    // mean 11, s = sqrt(2.5), 4 degrees of freedom
+        var scale = Math.sqrt(2.5) * Math.sqrt(1 + 1.0 / baseline.length);
+
+        Assert.assertEquals(RegressionCheck.predictionTestGreater(11, baseline), 0.5, TOLERANCE);
+        Assert.assertEquals(RegressionCheck.predictionTestGreater(11 + 2.131847 * scale, baseline), 0.05, TOLERANCE);
+        Assert.assertEquals(RegressionCheck.predictionTestGreater(11 + 3.746947 * scale, baseline), 0.01, TOLERANCE);
+        Assert.assertEquals(RegressionCheck.predictionTestGreater(11 - 2.131847 * scale, baseline), 0.95, TOLERANCE);
+    }
+
+    @Test
+    public void predictionTestGreaterWithoutSpread() {
+        logger.info("Starting method predictionTestGreaterWithoutSpread");
+
+        double[] baseline = {20, 20, 20};
+
+        Assert.assertEquals(RegressionCheck.predictionTestGreater(20.5, baseline), 0.0);
+        Assert.assertEquals(RegressionCheck.predictionTestGreater(20, baseline), 1.0);
+        Assert.assertEquals(RegressionCheck.predictionTestGreater(19, baseline), 1.0);
+    }
+
+    @Test
+    public void singleRunBaselineIsRejected() {
+        logger.info("Starting method singleRunBaselineIsRejected");
+
+        Assert.assertThrows(IllegalArgumentException.class, () -> RegressionCheck.predictionTestGreater(30, new double[] {20}));
+        var settings = new Config().with(Map.of("history.minBaselineRuns", 1)).history;
+        Assert.assertThrows(IllegalArgumentException.class, () -> new RunHistory(settings));
+    }
+}
@@ -0,0 +1,51 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Map;
+
+/** Token expiry of {@link StubServer}, on a stub of its own with a short token lifetime */
+public class TestStubServer {
+    private static final Logger logger = LoggerFactory.getLogger(TestStubServer.class);
+
+    @Test
+    public void expiredTokenIsRejected() throws Exception {
+        logger.info("Starting method expiredTokenIsRejected");
+
+        var settings = new Config().with(Map.of("stub.tokenTtlSeconds", 2, "stub.threads", 1)).stub;
+        var stub = new StubServer(settings).start();
+        try {
+            var client = HttpClient.newHttpClient();
+            var base = "http://127.0.0.1:" + stub.port() + "/";
+            var registered = client.send(post(base + BaseClass.REGISTER_PATH,
+                    "{\"username\":\"expiry\",\"password\":\"Secret1!\",\"email\":\"expiry@example.com\"}"),
+                    HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(registered.statusCode(), 200, registered.body());
+            var id = Serialization.mapper().readTree(registered.body()).path("id").asInt();
+            var login = client.send(post(base + BaseClass.LOGIN_PATH, "{\"username\":\"expiry\",\"password\":\"Secret1!\"}"),
+                    HttpResponse.BodyHandlers.ofString());
+            var token = Serialization.mapper().readTree(login.body()).path("access-token").asText();
+            var getUser = HttpRequest.newBuilder(URI.create(base + "user/" + id)).header("Authorization", token).GET().build();
+
+            Assert.assertEquals(client.send(getUser, HttpResponse.BodyHandlers.ofString()).statusCode(), 200);
+            Thread.sleep(2_100);
+            var expired = client.send(getUser, HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(expired.statusCode(), 401);
+            Assert.assertTrue(expired.body().contains("Invalid token"), expired.body());
+        } finally {
+            stub.stop();
+        }
+    }
+
+    private static HttpRequest post(String uri, String json) {
+        return HttpRequest.newBuilder(URI.create(uri))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+}
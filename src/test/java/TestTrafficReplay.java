@@ -0,0 +1,95 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.net.http.HttpRequest;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Captures a register, login and get user flow against one in-process stub, with the streaming validation
+ * load runs use, and replays it against a second stub that hands out other ids and tokens.
+ */
+public class TestTrafficReplay {
+    private static final Logger logger = LoggerFactory.getLogger(TestTrafficReplay.class);
+
+    @Test
+    public void streamedCaptureReplaysWithNewIdsAndTokens() throws Exception {
+        logger.info("Starting method streamedCaptureReplaysWithNewIdsAndTokens");
+
+        var config = YamlReader.config().with(Map.of("targets", List.of(), "sla.enforcePerRequest", false,
+                "capture.enabled", true, "capture.file", "target/test-capture/round-trip.fbtr"));
+        var user = new RegistrationRequest("r0000001", "Password1@", "r0000001@mail.com", "John", "Connor", "Sarah");
+
+        var recordedStub = new StubServer(config.stub).start();
+        try {
+            capture(at(config, recordedStub, true), user);
+        } finally {
+            recordedStub.stop();
+        }
+
+        var replayStub = new StubServer(config.stub).start();
+        try {
+            var replayConfig = at(config, replayStub, false);
+            registerOther(replayConfig);
+            var report = new TrafficReplay(replayConfig, "max").run(Path.of(config.capture.file));
+
+            Assert.assertEquals(report.requests, 4);
+            Assert.assertEquals(report.mismatches, new ArrayList<String>(), "Mismatches");
+            Assert.assertEquals(report.statusMismatches, 0);
+            Assert.assertEquals(report.bodyMismatches, 0);
+            Assert.assertEquals(report.failed, 0);
+        } finally {
+            replayStub.stop();
+        }
+    }
+
+    /** Register, login, get user by id with the token, then a request for an unknown user */
+    private static void capture(Config config, RegistrationRequest user) throws Exception {
+        var client = new HttpClientManager(config);
+        try {
+            var base = client.endpoints().next();
+            var registered = client.send(client.newRequest(base.register())
+                    .header("Content-type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(Serialization.toJson(user)))
+                    .build(), StreamingValidator.user(user).bodyHandler()).body().expectValid("Register", 200);
+            var login = client.send(client.newRequest(base.login())
+                    .header("Content-type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(Serialization.toJson(new LoginRequest(user.getUsername(), user.getPassword()))))
+                    .build(), StreamingValidator.login().bodyHandler()).body().expectValid("Login", 200);
+            var token = login.value("access-token");
+            client.send(client.newRequest(base.user(Integer.parseInt(registered.value("id"))))
+                    .header("Authorization", token)
+                    .build(), StreamingValidator.user(user).bodyHandler()).body().expectValid("Get user", 200);
+            var missing = client.send(client.newRequest(base.user(999))
+                    .header("Authorization", token)
+                    .build(), StreamingValidator.user(user).bodyHandler());
+            Assert.assertEquals(missing.statusCode(), 404);
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    /** Takes id 1 on the replay stub, so the replayed user gets another id than the recorded one */
+    private static void registerOther(Config config) throws Exception {
+        var client = new HttpClientManager(config);
+        try {
+            var other = new RegistrationRequest("r0000002", "Password1@", "r0000002@mail.com", "Kyle", "Reese", "Ann");
+            var response = client.send(client.newRequest(client.endpoints().next().register())
+                    .header("Content-type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(Serialization.toJson(other)))
+                    .build());
+            Assert.assertEquals(response.statusCode(), 200, response.body());
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    /** The configuration pointed at {@code stub}, capturing or not */
+    private static Config at(Config config, StubServer stub, boolean capture) {
+        return config.with(Map.of("host.url", config.stub.bindAddress, "host.port", stub.port(), "capture.enabled", capture));
+    }
+}